@@ -0,0 +1,47 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Chooses how to copy each file by its size. Small files are copied through a
+ * reusable direct buffer, usually in a single read and write; files of at least
+ * the transfer threshold are handed to the kernel with
+ * {@link TransferCopyStrategy}.
+ */
+public class AdaptiveCopyStrategy implements CopyStrategy {
+
+    public static final long DEFAULT_TRANSFER_THRESHOLD = 1024 * 1024;
+
+    private final CopyStrategy smallFiles;
+    private final CopyStrategy largeFiles;
+    private final long transferThreshold;
+
+    /**
+     * Constructor. Uses a buffer of {@link BufferCopyStrategy#DEFAULT_BUFFER_SIZE}
+     * bytes and a threshold of {@link #DEFAULT_TRANSFER_THRESHOLD} bytes.
+     */
+    public AdaptiveCopyStrategy() {
+        this(BufferCopyStrategy.DEFAULT_BUFFER_SIZE, DEFAULT_TRANSFER_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param bufferSize        Size of the direct buffer used for small files
+     * @param transferThreshold Files of at least this size are copied with
+     *                          transferTo
+     */
+    public AdaptiveCopyStrategy(int bufferSize, long transferThreshold) {
+        this.smallFiles = new BufferCopyStrategy(bufferSize);
+        this.largeFiles = new TransferCopyStrategy();
+        this.transferThreshold = transferThreshold;
+    }
+
+    @Override
+    public void copy(FileEntry source, Path target) throws IOException {
+        if (source.size() >= transferThreshold) {
+            largeFiles.copy(source, target);
+        } else {
+            smallFiles.copy(source, target);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * The automaton of the Aho-Corasick algorithm for a set of patterns over an
+ * alphabet of symbols numbered from 0, such as the 256 byte values or classes
+ * of characters. It is compiled into a full transition table, so scanning
+ * costs one table lookup per symbol regardless of the number of patterns.
+ * State 0 is the start state.
+ */
+public class AhoCorasickAutomaton {
+
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    /**
+     * Constructor. Builds the automaton of the given patterns.
+     * 
+     * @param patterns     The patterns to look for, as sequences of symbols
+     * @param alphabetSize The number of symbols; every symbol is less
+     * @throws IllegalArgumentException if a pattern is empty
+     */
+    public AhoCorasickAutomaton(List<int[]> patterns, int alphabetSize) {
+        this.alphabetSize = alphabetSize;
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> terminal = new ArrayList<>();
+        trie.add(newState(alphabetSize));
+        terminal.add(false);
+        for (int[] pattern : patterns) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("Pattern must not be empty");
+            }
+            int state = 0;
+            for (int c : pattern) {
+                int next = trie.get(state)[c];
+                if (next == -1) {
+                    next = trie.size();
+                    trie.add(newState(alphabetSize));
+                    terminal.add(false);
+                    trie.get(state)[c] = next;
+                }
+                state = next;
+            }
+            terminal.set(state, true);
+        }
+        this.transitions = new int[trie.size() * alphabetSize];
+        this.accepting = new boolean[trie.size()];
+
+        // Breadth-first over the trie, filling in the missing transitions from
+        // the failure links so that every state has a complete row.
+        int[] failure = new int[trie.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < alphabetSize; c++) {
+            int next = trie.get(0)[c];
+            transitions[c] = next == -1 ? 0 : next;
+            if (next != -1) {
+                queue.add(next);
+            }
+        }
+        accepting[0] = terminal.get(0);
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            accepting[state] = terminal.get(state) || accepting[failure[state]];
+            for (int c = 0; c < alphabetSize; c++) {
+                int next = trie.get(state)[c];
+                if (next == -1) {
+                    transitions[state * alphabetSize + c] = transitions[failure[state] * alphabetSize + c];
+                } else {
+                    transitions[state * alphabetSize + c] = next;
+                    failure[next] = transitions[failure[state] * alphabetSize + c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private static int[] newState(int size) {
+        int[] state = new int[size];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * @param state  The current state
+     * @param symbol The next symbol
+     * @return The state after the symbol
+     */
+    public int next(int state, int symbol) {
+        return transitions[state * alphabetSize + symbol];
+    }
+
+    /**
+     * @param state A state
+     * @return true if one of the patterns ends in the state
+     */
+    public boolean isAccepting(int state) {
+        return accepting[state];
+    }
+}
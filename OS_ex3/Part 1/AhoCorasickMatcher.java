@@ -0,0 +1,51 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Searches for several literals at once with the Aho-Corasick algorithm. The
+ * {@link AhoCorasickAutomaton} runs over the 256 byte values, so scanning
+ * costs one table lookup per byte regardless of the number of patterns.
+ */
+public class AhoCorasickMatcher implements ByteMatcher {
+
+    private final AhoCorasickAutomaton automaton;
+    private final int maxPatternLength;
+
+    /**
+     * Constructor. Builds the automaton of the given patterns.
+     *
+     * @param patterns The literals to look for
+     */
+    public AhoCorasickMatcher(List<byte[]> patterns) {
+        List<int[]> symbols = new ArrayList<>(patterns.size());
+        int longest = 0;
+        for (byte[] pattern : patterns) {
+            longest = Math.max(longest, pattern.length);
+            int[] bytes = new int[pattern.length];
+            for (int i = 0; i < pattern.length; i++) {
+                bytes[i] = pattern[i] & 0xff;
+            }
+            symbols.add(bytes);
+        }
+        this.automaton = new AhoCorasickAutomaton(symbols, 256);
+        this.maxPatternLength = longest;
+    }
+
+    @Override
+    public boolean find(ByteBuffer buffer) {
+        int state = 0;
+        for (int i = buffer.position(), end = buffer.limit(); i < end; i++) {
+            state = automaton.next(state, buffer.get(i) & 0xff);
+            if (automaton.isAccepting(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int maxPatternLength() {
+        return maxPatternLength;
+    }
+}
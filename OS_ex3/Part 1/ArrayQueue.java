@@ -1,3 +1,6 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.NoSuchElementException;
 /**
  * The ArrayQueue class represents a generic queue implemented using an array.
@@ -52,6 +55,54 @@ public class ArrayQueue<T> {
         return element;
     }
 
+    /**
+     * Adds all elements of the given collection to the end of the queue, in the
+     * collection's iteration order. The elements are copied into the underlying
+     * array with at most two bulk copies (one when the free space wraps around).
+     *
+     * @param items the elements to be added to the queue
+     * @throws IllegalStateException if the queue does not have room for all the
+     *                               elements
+     */
+    public void enqueueAll(Collection<? extends T> items) {
+        Object[] elements = items.toArray();
+        if (elements.length > remainingCapacity()) {
+            throw new IllegalStateException("Queue does not have room for " + elements.length + " elements");
+        }
+        if (elements.length == 0) {
+            return;
+        }
+        int start = (head + size) % queue.length;
+        int firstPart = Math.min(elements.length, queue.length - start);
+        System.arraycopy(elements, 0, queue, start, firstPart);
+        System.arraycopy(elements, firstPart, queue, 0, elements.length - firstPart);
+        tail = (start + elements.length - 1) % queue.length;
+        size += elements.length;
+    }
+
+    /**
+     * Removes up to <code>max</code> elements from the front of the queue and
+     * adds them to the given collection, in queue order.
+     *
+     * @param target the collection to transfer the elements into
+     * @param max    the maximum number of elements to transfer
+     * @return the number of elements transferred
+     */
+    public int drainTo(Collection<? super T> target, int max) {
+        int count = Math.min(size, max);
+        if (count <= 0) {
+            return 0;
+        }
+        List<T> elements = Arrays.asList(queue);
+        int firstPart = Math.min(count, queue.length - head);
+        target.addAll(elements.subList(head, head + firstPart));
+        target.addAll(elements.subList(0, count - firstPart));
+        Arrays.fill(queue, head, head + firstPart, null);
+        Arrays.fill(queue, 0, count - firstPart, null);
+        head = (head + count) % queue.length;
+        size -= count;
+        return count;
+    }
 
     /**
      * Checks if the queue is full.
@@ -79,4 +130,13 @@ public class ArrayQueue<T> {
     public int size() {
         return size;
     }
+
+    /**
+     * Returns the number of elements that can still be added to the queue.
+     *
+     * @return the number of free slots in the queue
+     */
+    public int remainingCapacity() {
+        return queue.length - size;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+/**
+ * Limits the matches by the size and modification time their directory was
+ * listed with, so no stage has to query the file system again.
+ */
+public class AttributeFilter {
+
+    /**
+     * A filter that accepts every file.
+     */
+    public static final AttributeFilter NONE = new AttributeFilter(0, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    private final long minSize;
+    private final long maxSize;
+    private final long modifiedAfter;
+    private final long modifiedBefore;
+
+    /**
+     * Constructor. All bounds are inclusive.
+     *
+     * @param minSize        Minimal size in bytes
+     * @param maxSize        Maximal size in bytes
+     * @param modifiedAfter  Earliest modification time, in milliseconds since
+     *                       the epoch
+     * @param modifiedBefore Latest modification time, in milliseconds since the
+     *                       epoch
+     */
+    public AttributeFilter(long minSize, long maxSize, long modifiedAfter, long modifiedBefore) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modifiedAfter = modifiedAfter;
+        this.modifiedBefore = modifiedBefore;
+    }
+
+    /**
+     * Checks whether a file is within the bounds.
+     *
+     * @param file The file
+     * @return true if its size and modification time are within the bounds
+     */
+    public boolean accepts(FileEntry file) {
+        if (this == NONE) {
+            return true;
+        }
+        long size = file.size();
+        long modified = file.lastModified();
+        return size >= minSize && size <= maxSize && modified >= modifiedAfter && modified <= modifiedBefore;
+    }
+}
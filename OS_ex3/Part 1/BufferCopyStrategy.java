@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies files through a direct {@link ByteBuffer}. The buffer lives outside the
+ * Java heap, so the channels read into it and write from it without the extra
+ * copy a heap array needs. The buffer is allocated once and reused for every
+ * file, which makes an instance unsafe to share between threads.
+ */
+public class BufferCopyStrategy implements CopyStrategy {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructor. Allocates a direct buffer of {@link #DEFAULT_BUFFER_SIZE}
+     * bytes.
+     */
+    public BufferCopyStrategy() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor. Allocates a direct buffer of the given size.
+     * 
+     * @param bufferSize Buffer size in bytes
+     */
+    public BufferCopyStrategy(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Copies the source file into the target file, one buffer at a time.
+     * 
+     * @param source The file to copy
+     * @param target The file to copy into
+     * @throws IOException If an error occurs during the copy process
+     */
+    @Override
+    public void copy(FileEntry source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source.getPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Searches byte buffers for one or more literal byte patterns.
+ */
+public interface ByteMatcher {
+
+    /**
+     * Checks whether any of the patterns occurs between the position and the
+     * limit of the given buffer. The buffer's position and limit are not
+     * changed.
+     * 
+     * @param buffer The buffer to search
+     * @return true if a pattern was found, false otherwise
+     */
+    boolean find(ByteBuffer buffer);
+
+    /**
+     * Returns the length of the longest pattern, so that callers scanning a file
+     * window by window can overlap the windows by one byte less than that.
+     * 
+     * @return the length of the longest pattern
+     */
+    int maxPatternLength();
+}
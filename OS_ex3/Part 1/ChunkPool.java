@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The large files the copiers of a run are copying in chunks. A copier that
+ * takes a file of at least the chunk threshold from the results queue starts a
+ * {@link ChunkedCopy} here instead of copying it alone, and every copier takes
+ * chunks from the pool whenever it is between files. Copiers waiting for
+ * files look at the pool every {@link #IDLE_POLL_MILLIS}, so idle copiers join
+ * a large file soon after it starts while the results queue only ever holds
+ * matches.
+ */
+public class ChunkPool {
+
+    public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    public static final long DEFAULT_CHUNK_THRESHOLD = 64 * 1024 * 1024;
+
+    public static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+    public static final long IDLE_POLL_MILLIS = 10;
+
+    private final long chunkSize;
+    private final long threshold;
+    private final ConcurrentLinkedQueue<ChunkedCopy> copies = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor.
+     * 
+     * @param chunkSize Size of a chunk in bytes
+     * @param threshold Files of at least this size are copied in chunks
+     */
+    public ChunkPool(long chunkSize, long threshold) {
+        this.chunkSize = chunkSize;
+        this.threshold = Math.max(threshold, chunkSize + 1);
+    }
+
+    /**
+     * Checks whether a file is large enough to be copied in chunks.
+     * 
+     * @param file The file to copy
+     * @return true if the file should be copied with {@link #start}
+     */
+    public boolean isChunked(FileEntry file) {
+        return file.size() >= threshold;
+    }
+
+    /**
+     * Starts copying a file in chunks. Idle copiers find it within
+     * {@link #IDLE_POLL_MILLIS}, busy ones after their current file.
+     * 
+     * @param source     The file to copy
+     * @param target     The copy to create
+     * @param part       The file to write the copy to until it is complete
+     * @param event      The JFR event of the copy, already begun
+     * @param startNanos The time the copy started, from {@link System#nanoTime()}
+     * @throws IOException If the copy cannot be started
+     */
+    public void start(FileEntry source, Path target, Path part, FileCopiedEvent event, long startNanos)
+            throws IOException {
+        ChunkedCopy copy = new ChunkedCopy(source, target, part, chunkSize, event, startNanos);
+        copies.add(copy);
+    }
+
+    /**
+     * Returns a copy that still has unclaimed chunks, dropping copies whose
+     * chunks are all claimed.
+     * 
+     * @return a copy to claim chunks from, or null if there is none
+     */
+    public ChunkedCopy next() {
+        ChunkedCopy copy;
+        while ((copy = copies.peek()) != null && !copy.hasUnclaimed()) {
+            copies.remove(copy);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A large file being copied in chunks by several copiers at once. The copy is
+ * written to a part file, extended to the size of the source
+ * when the copy starts; every chunk is then read and written at its own offset,
+ * so the copiers never move a shared channel position. The copier that lands
+ * the last chunk closes the channels and renames the part file to the target,
+ * so the target never holds a partial copy.
+ */
+public class ChunkedCopy {
+
+    /** Specific to this program, so that cleaning up spares the user's own files. */
+    public static final String PART_SUFFIX = ".disksearcher-part";
+
+    private final FileEntry source;
+    private final Path target;
+    private final Path part;
+    private final long chunkSize;
+    private final int chunks;
+    private final FileChannel in;
+    private final FileChannel out;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private final AtomicInteger unfinished;
+    private final FileCopiedEvent event;
+    private final long startNanos;
+    private volatile IOException failure;
+
+    /**
+     * Constructor. Opens the source, creates the part file and extends it to the
+     * size of the source.
+     * 
+     * @param source     The file to copy
+     * @param target     The copy to create
+     * @param part       The file to write the copy to until it is complete
+     * @param chunkSize  Size of a chunk in bytes
+     * @param event      The JFR event of the copy, already begun
+     * @param startNanos The time the copy started, from {@link System#nanoTime()}
+     * @throws IOException If the source cannot be opened or the part file
+     *                     cannot be created
+     */
+    public ChunkedCopy(FileEntry source, Path target, Path part, long chunkSize, FileCopiedEvent event,
+            long startNanos) throws IOException {
+        this.source = source;
+        this.target = target;
+        this.part = part;
+        this.chunkSize = chunkSize;
+        this.chunks = (int) ((source.size() + chunkSize - 1) / chunkSize);
+        this.unfinished = new AtomicInteger(chunks);
+        this.event = event;
+        this.startNanos = startNanos;
+        this.in = FileChannel.open(source.getPath(), StandardOpenOption.READ);
+        try {
+            this.out = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            out.write(ByteBuffer.allocate(1), source.size() - 1);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Claims the next chunk nobody copies yet.
+     * 
+     * @return the index of the chunk, or -1 if every chunk is claimed
+     */
+    public int claim() {
+        int chunk = nextChunk.getAndIncrement();
+        return chunk < chunks ? chunk : -1;
+    }
+
+    /**
+     * Checks whether some chunk is still unclaimed.
+     * 
+     * @return true if {@link #claim()} may still return a chunk
+     */
+    public boolean hasUnclaimed() {
+        return nextChunk.get() < chunks;
+    }
+
+    /**
+     * Copies a claimed chunk through the given buffer. A failure is kept and
+     * reported by {@link #complete()}; the remaining chunks are skipped.
+     * 
+     * @param chunk  The index of the chunk, from {@link #claim()}
+     * @param buffer The buffer to copy through
+     * @return true if this was the last chunk of the file to land
+     */
+    public boolean copyChunk(int chunk, ByteBuffer buffer) {
+        if (failure == null) {
+            long position = chunk * chunkSize;
+            long end = Math.min(position + chunkSize, source.size());
+            try {
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = in.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException(source + " shrank while it was copied");
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        position += out.write(buffer, position);
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        return unfinished.decrementAndGet() == 0;
+    }
+
+    /**
+     * Finishes the copy once every chunk landed: closes the channels and renames
+     * the part file to the target, or deletes it if a chunk failed.
+     * 
+     * @throws IOException If a chunk failed or the part file cannot be renamed
+     */
+    public void complete() throws IOException {
+        try {
+            in.close();
+        } finally {
+            out.close();
+        }
+        if (failure != null) {
+            Files.deleteIfExists(part);
+            throw failure;
+        }
+        Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public FileEntry getSource() {
+        return source;
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    public FileCopiedEvent getEvent() {
+        return event;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded-size queue for multithreaded producer-consumer applications that
+ * guards its buffer with a {@link ReentrantLock} instead of a monitor. Waiting
+ * on a {@link Condition} does not pin a virtual thread to its carrier thread,
+ * which <code>synchronized</code>/<code>wait</code> does, so this is the queue
+ * to use when the stages run on virtual threads. Separate conditions for "not
+ * empty" and "not full" also mean that producers only wake consumers and vice
+ * versa.
+ * The producer registration contract is the same as in
+ * {@link SynchronizedQueue}.
+ * 
+ * @param <T> Type of data items
+ */
+public class ConditionQueue<T> implements ProducerConsumerQueue<T> {
+
+	private final T[] buffer;
+	private final ArrayQueue<T> queue;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final QueueMetrics metrics;
+	private int producers;
+	private boolean closed;
+
+	/**
+	 * Constructor. Allocates a buffer (an array) with the given capacity.
+	 * 
+	 * @param capacity Buffer capacity
+	 */
+	public ConditionQueue(int capacity) {
+		this(capacity, "queue");
+	}
+
+	/**
+	 * Constructor. Allocates a buffer (an array) with the given capacity.
+	 * 
+	 * @param capacity Buffer capacity
+	 * @param name     Queue name, used in metrics
+	 */
+	@SuppressWarnings("unchecked")
+	public ConditionQueue(int capacity, String name) {
+		this.buffer = (T[]) (new Object[capacity]);
+		this.queue = new ArrayQueue<>(buffer);
+		this.metrics = new QueueMetrics(name);
+	}
+
+	@Override
+	public T dequeue() {
+		lock.lock();
+		try {
+			if (!awaitNotEmpty(false, 0)) {
+				return null;
+			}
+			T item = queue.dequeue();
+			metrics.dequeued(1);
+			notFull.signal();
+			return item;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public T poll(long timeout, TimeUnit unit) {
+		lock.lock();
+		try {
+			if (!awaitNotEmpty(true, unit.toNanos(timeout))) {
+				return null;
+			}
+			T item = queue.dequeue();
+			metrics.dequeued(1);
+			notFull.signal();
+			return item;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void enqueue(T item) {
+		lock.lock();
+		try {
+			if (!awaitNotFull()) {
+				return;
+			}
+			queue.enqueue(item);
+			metrics.enqueued(1, queue.size());
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean offer(T item) {
+		lock.lock();
+		try {
+			if (closed || queue.isFull()) {
+				return false;
+			}
+			queue.enqueue(item);
+			metrics.enqueued(1, queue.size());
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void enqueueAll(Collection<? extends T> items) {
+		List<T> pending = new ArrayList<>(items);
+		int offset = 0;
+		lock.lock();
+		try {
+			while (offset < pending.size()) {
+				if (!awaitNotFull()) {
+					return;
+				}
+				int count = Math.min(queue.remainingCapacity(), pending.size() - offset);
+				queue.enqueueAll(pending.subList(offset, offset + count));
+				metrics.enqueued(count, queue.size());
+				offset += count;
+				notEmpty.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> target, int max) {
+		lock.lock();
+		try {
+			if (!awaitNotEmpty(false, 0)) {
+				return 0;
+			}
+			int count = queue.drainTo(target, max);
+			if (count > 0) {
+				metrics.dequeued(count);
+				notFull.signalAll();
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits while the queue is empty and producers are registered. Called with
+	 * the lock held. The wait ends early when the queue is closed, the thread is
+	 * interrupted or, if timed, the time is up.
+	 * 
+	 * @param timed Whether to wait at most <code>nanos</code>
+	 * @param nanos How long to wait, if timed
+	 * @return true if an item can be taken
+	 */
+	private boolean awaitNotEmpty(boolean timed, long nanos) {
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (queue.isEmpty() && producers > 0 && !closed) {
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileEmpty();
+			}
+			try {
+				if (!timed) {
+					notEmpty.await();
+				} else if (nanos > 0) {
+					nanos = notEmpty.awaitNanos(nanos);
+				} else {
+					break;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (blocked) {
+			metrics.blockedWhileEmpty(blockedSince);
+		}
+		return !closed && !queue.isEmpty();
+	}
+
+	/**
+	 * Waits while the queue is full. Called with the lock held. The wait ends
+	 * early when the queue is closed or the thread is interrupted.
+	 * 
+	 * @return true if an item can be enqueued
+	 */
+	private boolean awaitNotFull() {
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (queue.isFull() && !closed) {
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileFull();
+			}
+			try {
+				notFull.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (blocked) {
+			metrics.blockedWhileFull(blockedSince);
+		}
+		return !closed && !queue.isFull();
+	}
+
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		lock.lock();
+		try {
+			return closed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int getCapacity() {
+		return buffer.length;
+	}
+
+	@Override
+	public int getSize() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void registerProducer() {
+		lock.lock();
+		try {
+			producers++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Unregisters a producer from this queue. When the last producer leaves, all
+	 * waiting consumers are woken so they can drain the queue and finish.
+	 */
+	@Override
+	public void unregisterProducer() {
+		lock.lock();
+		try {
+			producers--;
+			if (producers == 0) {
+				notEmpty.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return getSize() == 0;
+	}
+
+	@Override
+	public int getProducers() {
+		lock.lock();
+		try {
+			return producers;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
+}
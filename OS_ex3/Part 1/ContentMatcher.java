@@ -0,0 +1,88 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks whether the contents of a file contain at least one of a set of
+ * literals. A single literal is searched with {@link HorspoolMatcher}, several
+ * with {@link AhoCorasickMatcher}. Files smaller than the mapping threshold are
+ * read with a single bulk read into a per-thread buffer; larger files are
+ * memory-mapped, window by window, and scanned in place. The search stops at the
+ * first occurrence. An instance is immutable and shared by all searchers.
+ */
+public class ContentMatcher {
+
+    public static final int MAPPING_THRESHOLD = 256 * 1024;
+
+    public static final long MAPPING_WINDOW_SIZE = 1L << 30;
+
+    private final ByteMatcher matcher;
+    private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal
+            .withInitial(() -> ByteBuffer.allocateDirect(MAPPING_THRESHOLD));
+
+    /**
+     * Constructor. Compiles the literals, encoded as UTF-8, into a matcher.
+     * 
+     * @param literals The literals to look for
+     */
+    public ContentMatcher(List<String> literals) {
+        if (literals.isEmpty()) {
+            throw new IllegalArgumentException("At least one literal is required");
+        }
+        List<byte[]> patterns = new ArrayList<>();
+        for (String literal : literals) {
+            patterns.add(literal.getBytes(StandardCharsets.UTF_8));
+        }
+        this.matcher = patterns.size() == 1 ? new HorspoolMatcher(patterns.get(0))
+                : new AhoCorasickMatcher(patterns);
+    }
+
+    /**
+     * Checks whether the contents of the given file contain any of the literals.
+     * 
+     * @param file The file to search
+     * @return true if a literal was found, false otherwise
+     * @throws IOException If the file cannot be read
+     */
+    public boolean matches(FileEntry file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAPPING_THRESHOLD) {
+                return matchesSmall(channel);
+            }
+            return matchesMapped(channel, size);
+        }
+    }
+
+    private boolean matchesSmall(FileChannel channel) throws IOException {
+        ByteBuffer buffer = readBuffers.get();
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // A regular file is normally read in one call; loop for short reads
+        }
+        buffer.flip();
+        return matcher.find(buffer);
+    }
+
+    private boolean matchesMapped(FileChannel channel, long size) throws IOException {
+        long overlap = matcher.maxPatternLength() - 1;
+        long position = 0;
+        while (position < size) {
+            long length = Math.min(MAPPING_WINDOW_SIZE, size - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (matcher.find(window)) {
+                return true;
+            }
+            if (position + length >= size) {
+                break;
+            }
+            position += length - overlap;
+        }
+        return false;
+    }
+}
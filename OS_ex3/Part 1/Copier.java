@@ -1,17 +1,38 @@
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A copier thread. Reads files to copy from a queue and copies them to the
- * given destination.
+ * given destination. Every file is copied to a part file first and renamed to
+ * its final name once complete, so the destination never holds a partial copy
+ * under the name of a file. Optionally, files whose contents were already
+ * copied are skipped or hard-linked instead, see {@link Deduplicator}.
  */
 public class Copier implements Runnable {
 
-    public static final int COPY_BUFFER_SIZE = 4096;
+    public static final int COPY_BATCH_SIZE = 16;
 
-    private final SynchronizedQueue<File> resultsQueue;
+    private final ProducerConsumerQueue<FileEntry> resultsQueue;
     private final File destination;
+    private final CopyStrategy copyStrategy;
+    private final NameRegistry names;
+    private final ChunkPool chunks;
+    private ByteBuffer chunkBuffer;
+    private final CopyJournal journal;
+    private final Deduplicator dedup;
+    private final HashingCopyStrategy hashing;
+    private boolean deduplicated;
+    private boolean skipped;
+    private final SearchIndex index;
+    private final PipelineMetrics metrics;
+    private volatile boolean retired;
 
     /**
      * Constructor. Initializes the worker with a destination directory and a queue
@@ -20,60 +41,300 @@ public class Copier implements Runnable {
      * @param destination  The destination directory
      * @param resultsQueue The queue of files found, to be copied
      */
-    public Copier(File destination, SynchronizedQueue<File> resultsQueue) {
+    public Copier(File destination, ProducerConsumerQueue<FileEntry> resultsQueue) {
+        this(destination, resultsQueue, new AdaptiveCopyStrategy(), new NameRegistry(destination), null,
+                null, null, null, new PipelineMetrics());
+    }
+
+    /**
+     * Constructor. Initializes a worker that copies with the given strategy,
+     * skips files copied by a previous run and records its copies in the run's
+     * journal, index and metrics.
+     * 
+     * @param destination  The destination directory
+     * @param resultsQueue The queue of files found, to be copied
+     * @param copyStrategy The strategy used to copy file contents, owned by this
+     *                     copier
+     * @param names        The names reserved in the destination directory,
+     *                     shared by all the copiers
+     * @param chunks       The large files copied in chunks, shared by all the
+     *                     copiers, or null to copy every file alone
+     * @param journal      The journal of completed copies, or null to keep none
+     * @param dedup        The copies made so far by their hash, shared by all
+     *                     the copiers, or null to neither hash nor deduplicate;
+     *                     files are then copied with a strategy it creates
+     * @param index        The index of the previous run, or null to copy every
+     *                     file
+     * @param metrics      The metrics of the run
+     */
+    public Copier(File destination, ProducerConsumerQueue<FileEntry> resultsQueue, CopyStrategy copyStrategy,
+            NameRegistry names, ChunkPool chunks, CopyJournal journal, Deduplicator dedup, SearchIndex index,
+            PipelineMetrics metrics) {
         this.resultsQueue = resultsQueue;
         this.destination = destination;
+        this.copyStrategy = copyStrategy;
+        this.names = names;
+        this.chunks = chunks;
+        this.journal = journal;
+        this.dedup = dedup;
+        this.hashing = dedup == null ? null : dedup.newCopyStrategy();
+        this.index = index;
+        this.metrics = metrics;
     }
 
     /**
-     * Runs the copier thread. The thread will fetch files from the queue and copy
-     * them, one after each other, to the destination directory.
-     * When the queue has no more files, the thread finishes.
+     * Runs the copier thread. The thread will fetch up to
+     * {@link #COPY_BATCH_SIZE} files at a time from the queue and copy them,
+     * one after each other, to the destination directory. Between files, and
+     * while it waits for files, it copies chunks of the large files in the
+     * chunk pool.
+     * When the queue has no more files, or is closed, the thread finishes; a
+     * closed queue also drops the rest of the batch.
      */
     @Override
     public void run() {
-        File file;
-        while ((file = resultsQueue.dequeue()) != null) {
+        List<FileEntry> batch = new ArrayList<>(COPY_BATCH_SIZE);
+        while (!retired && nextBatch(batch)) {
+            for (FileEntry file : batch) {
+                if (resultsQueue.isClosed()) {
+                    break;
+                }
+                copy(file);
+                copyChunks();
+            }
+            batch.clear();
+        }
+        copyChunks();
+    }
+
+    /**
+     * Takes the next batch of files from the queue. Without a chunk pool the
+     * copier waits as long as it takes; with one, it waits at most
+     * {@link ChunkPool#IDLE_POLL_MILLIS} at a time and copies chunks in
+     * between.
+     * 
+     * @param batch The list to add the files to
+     * @return false if there are no more files, or the copier was retired
+     */
+    private boolean nextBatch(List<FileEntry> batch) {
+        if (chunks == null) {
+            return resultsQueue.drainTo(batch, COPY_BATCH_SIZE) > 0;
+        }
+        FileEntry file;
+        while ((file = resultsQueue.poll(ChunkPool.IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            if (retired || resultsQueue.isClosed()
+                    || (resultsQueue.getProducers() == 0 && resultsQueue.isEmpty())) {
+                return false;
+            }
+            copyChunks();
+        }
+        batch.add(file);
+        while (batch.size() < COPY_BATCH_SIZE && (file = resultsQueue.poll(0, TimeUnit.MILLISECONDS)) != null) {
+            batch.add(file);
+        }
+        return true;
+    }
+
+    private void copy(FileEntry file) {
+        File destFile = null;
+        FileCopiedEvent event = new FileCopiedEvent();
+        event.begin();
+        long start = System.nanoTime();
+        deduplicated = false;
+        skipped = false;
+        try {
+            destFile = copyFile(file, event, start);
+            if (destFile == null) {
+                // Recorded by the copier that lands its last chunk
+                return;
+            }
+            if (skipped) {
+                metrics.fileSkipped(file);
+            } else if (deduplicated) {
+                metrics.fileDeduplicated(file);
+            } else {
+                metrics.fileCopied(file, start, event);
+            }
+            journal(file, destFile.getName());
+        } catch (Exception e) {
+            metrics.copyFailed();
+            e.printStackTrace();
+        }
+        if (index != null)
+            index.recordMatch(file, destFile == null ? null : destFile.getName());
+    }
+
+    /**
+     * Copies chunks from the chunk pool until every chunk in it is claimed, and
+     * finishes the files whose last chunk this copier lands.
+     */
+    private void copyChunks() {
+        if (chunks == null) {
+            return;
+        }
+        ChunkedCopy copy;
+        while ((copy = chunks.next()) != null) {
+            int chunk = copy.claim();
+            if (chunk < 0) {
+                continue;
+            }
+            if (chunkBuffer == null) {
+                chunkBuffer = ByteBuffer.allocateDirect(ChunkPool.IO_BUFFER_SIZE);
+            }
+            if (!copy.copyChunk(chunk, chunkBuffer)) {
+                continue;
+            }
+            String destName = null;
             try {
-                copyFile(file);
-            } catch (Exception e) {
+                copy.complete();
+                destName = copy.getTarget().getFileName().toString();
+                metrics.fileCopied(copy.getSource(), copy.getStartNanos(), copy.getEvent());
+                journal(copy.getSource(), destName);
+            } catch (IOException e) {
+                metrics.copyFailed();
                 e.printStackTrace();
             }
+            if (index != null)
+                index.recordMatch(copy.getSource(), destName);
+        }
+    }
+
+    private void journal(FileEntry file, String destName) {
+        if (journal == null) {
+            return;
         }
+        try {
+            journal.record(file, destName);
+        } catch (IOException e) {
+            // The copy itself succeeded; it is only copied again on resume
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Asks the copier to finish after the batch it is copying, or waiting for,
+     * without taking more files from the queue.
+     */
+    public void retire() {
+        retired = true;
     }
 
     /**
-     * Copies a file to a given destination.
+     * Copies a file to the destination directory with the copier's strategy.
+     * If the journal of a resumed run or the index shows an identical copy from
+     * a previous run is still there, nothing is copied; if the index shows the
+     * file changed, its previous copy is overwritten.
+     * A large file is only started here and handed to the chunk pool.
+     * A file with the same contents as an earlier copy is skipped or
+     * hard-linked, if deduplicating.
      * 
-     * @param file        The file to copy
-     * @param destination The destination directory
+     * @param file  The file to copy
+     * @param event The JFR event of the copy, already begun
+     * @param start The time the copy started, from {@link System#nanoTime()}
+     * @return The copy of the file, or null if it is copied in chunks
      * @throws Exception If an error occurs during the copy process
      */
-    private void copyFile(File file) throws Exception {
-        File destFile = fileDestination(file);
-        FileInputStream fis = new FileInputStream(file);
-        FileOutputStream fos = new FileOutputStream(destFile);
-
-        byte[] buffer = new byte[COPY_BUFFER_SIZE];
-        int read;
-        while ((read = fis.read(buffer)) != -1) {
-            fos.write(buffer, 0, read);
+    private File copyFile(FileEntry file, FileCopiedEvent event, long start) throws Exception {
+        if (journal != null) {
+            String completedCopy = journal.completedCopy(file);
+            if (completedCopy != null) {
+                File destFile = new File(destination, completedCopy);
+                if (destFile.length() == file.size() && destFile.isFile()) {
+                    names.claim(completedCopy);
+                    skipped = true;
+                    return destFile;
+                }
+            }
         }
-        fos.close();
-        fis.close();
+        if (index != null) {
+            String previousCopy = index.previousCopy(file);
+            if (previousCopy != null) {
+                File destFile = new File(destination, previousCopy);
+                if (destFile.length() == file.size() && destFile.isFile()) {
+                    skipped = true;
+                    return destFile;
+                }
+            }
+            String previousDestination = index.previousDestination(file);
+            if (previousDestination != null) {
+                File destFile = new File(destination, previousDestination);
+                names.claim(previousDestination);
+                return copyTo(file, destFile, event, start);
+            }
+        }
+        return copyTo(file, null, event, start);
     }
 
-    private File fileDestination(File file) throws Exception {
-        String name = file.getName().substring(0, file.getName().lastIndexOf('.')) ;
-        String format = file.getName().substring(file.getName().lastIndexOf('.'));
-        
-        File destFile = new File(destination, name + format);
-        for (int i = 1; i < 100 && !destFile.createNewFile(); i++) {
-            name = name + "(" + i + ")";
-            destFile = new File(destination, name + format);
+    /**
+     * Copies a file to the given copy, or to a newly reserved name if none is
+     * given, unless it is a duplicate.
+     */
+    private File copyTo(FileEntry file, File destFile, FileCopiedEvent event, long start) throws IOException {
+        if (dedup != null) {
+            String original = dedup.findDuplicate(file, hashing);
+            if (original != null) {
+                return duplicate(file, destFile, original);
+            }
+        }
+        if (destFile == null) {
+            destFile = new File(destination, names.reserve(file.getName()));
+        }
+        Path target = destFile.toPath();
+        Path part = target.resolveSibling(names.reserve(destFile.getName() + ChunkedCopy.PART_SUFFIX));
+        if (chunks != null && chunks.isChunked(file)) {
+            chunks.start(file, target, part, event, start);
+            return null;
+        }
+        try {
+            (hashing == null ? copyStrategy : hashing).copy(file, part);
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        if (dedup != null) {
+            String original = dedup.register(hashing.getHash(), destFile.getName());
+            if (original != null) {
+                // Another copier copied the same contents meanwhile
+                return duplicate(file, destFile, original);
+            }
+            dedup.record(hashing.getHash(), destFile.getName());
+        }
+        return destFile;
+    }
 
+    /**
+     * Handles a file with the same contents as an earlier copy, whose hash is
+     * in the hashing strategy. A skipped file is recorded as copied to the
+     * earlier copy; a linked one gets its own name, falling back to a copy of
+     * the earlier copy where hard links are not supported.
+     * 
+     * @param file     The file to copy
+     * @param destFile The copy reserved or already made for the file, or null
+     * @param original The name of the earlier copy
+     * @return the earlier copy, or the link to it
+     * @throws IOException If the link cannot be created
+     */
+    private File duplicate(FileEntry file, File destFile, String original) throws IOException {
+        deduplicated = true;
+        File originalFile = new File(destination, original);
+        if (!dedup.isLinking()) {
+            if (destFile != null) {
+                Files.deleteIfExists(destFile.toPath());
+            }
+            return originalFile;
+        }
+        if (destFile == null) {
+            destFile = new File(destination, names.reserve(file.getName()));
+        }
+        Path target = destFile.toPath();
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, originalFile.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(originalFile.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
         }
+        dedup.record(hashing.getHash(), destFile.getName());
         return destFile;
     }
 
@@ -0,0 +1,226 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the copies a run completed, so that a run that
+ * dies can be resumed without copying again what was already copied.
+ * <p>
+ * A record is appended after the copy is renamed to its final name. Records
+ * are buffered and written and synced to disk in batches of
+ * {@link #SYNC_BATCH} records, or once {@link #SYNC_INTERVAL_MILLIS}
+ * milliseconds passed since the last sync. A background thread also syncs
+ * the pending records every interval, so that the last records do not wait
+ * for more copies to finish. A crash loses at most the last batch: those
+ * files are copied again on resume.
+ * A record cut short by a crash is dropped when the journal is replayed.
+ */
+public class CopyJournal {
+
+    public static final String DEFAULT_FILE_NAME = ".disksearcher.journal";
+
+    public static final int SYNC_BATCH = 256;
+
+    public static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private static final int MAGIC = 0x44534a4e;
+    private static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final Map<String, Record> completed;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(pending);
+    private int pendingRecords;
+    private long lastSync = System.nanoTime();
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CopyJournal(FileChannel channel, Map<String, Record> completed) {
+        this.channel = channel;
+        this.completed = completed;
+        syncer.scheduleWithFixedDelay(this::syncPending, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a journal. When resuming, the completed copies are replayed from
+     * the journal and new records are appended to it; otherwise the journal is
+     * started afresh.
+     *
+     * @param file   The journal file
+     * @param resume Whether to replay the journal of a previous run
+     * @return the journal
+     * @throws IOException If the journal cannot be opened
+     */
+    public static CopyJournal open(Path file, boolean resume) throws IOException {
+        Map<String, Record> completed = new HashMap<>();
+        long valid = 0;
+        if (resume && Files.isRegularFile(file)) {
+            byte[] bytes = Files.readAllBytes(file);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            try {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    valid = bytes.length - in.available();
+                    while (in.available() > 0) {
+                        String source = in.readUTF();
+                        Record record = new Record(in.readLong(), in.readLong(), in.readUTF());
+                        completed.put(source, record);
+                        valid = bytes.length - in.available();
+                    }
+                }
+            } catch (EOFException e) {
+                // A record torn by a crash; the journal is cut back before it
+            }
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        CopyJournal journal = new CopyJournal(channel, completed);
+        if (valid == 0) {
+            channel.truncate(0);
+            journal.out.writeInt(MAGIC);
+            journal.out.writeInt(VERSION);
+            journal.sync();
+        } else {
+            channel.truncate(valid);
+            channel.position(valid);
+        }
+        return journal;
+    }
+
+    /**
+     * Returns the name a file was copied to by the run being resumed, if the
+     * file has not changed since.
+     *
+     * @param file The file to copy
+     * @return the name of its copy, or null if it has to be copied
+     */
+    public String completedCopy(FileEntry file) {
+        Record record = completed.get(file.toString());
+        if (record == null || record.size != file.size() || record.lastModified != file.lastModified()) {
+            return null;
+        }
+        return record.destination;
+    }
+
+    /**
+     * Deletes the part files a crashed run left in the destination directory,
+     * sparing those the journal records as completed copies. Only files with
+     * the suffix of this program, {@link ChunkedCopy#PART_SUFFIX}, are
+     * deleted.
+     *
+     * @param destination The destination directory
+     */
+    public void removePartFiles(File destination) {
+        Set<String> copies = new HashSet<>();
+        for (Record record : completed.values()) {
+            copies.add(record.destination);
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(destination.toPath(),
+                "*" + ChunkedCopy.PART_SUFFIX)) {
+            for (Path entry : entries) {
+                if (!copies.contains(entry.getFileName().toString())) {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        } catch (IOException e) {
+            // Leftovers only waste space
+        }
+    }
+
+    /**
+     * Records a completed copy, syncing the journal if the batch is full or the
+     * sync interval passed. Copies the resumed run already recorded are not
+     * recorded again.
+     *
+     * @param file        The copied file
+     * @param destination The name of its copy
+     * @throws IOException If the journal cannot be written
+     */
+    public synchronized void record(FileEntry file, String destination) throws IOException {
+        if (destination.equals(completedCopy(file))) {
+            // Already journaled by the run being resumed
+            return;
+        }
+        out.writeUTF(file.toString());
+        out.writeLong(file.size());
+        out.writeLong(file.lastModified());
+        out.writeUTF(destination);
+        pendingRecords++;
+        if (pendingRecords >= SYNC_BATCH || isSyncDue()) {
+            sync();
+        }
+    }
+
+    // Run every sync interval, so no record waits longer than that
+    private synchronized void syncPending() {
+        if (pendingRecords == 0 || !channel.isOpen()) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            // Tried again on the next record, and on close
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isSyncDue() {
+        return System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Writes and syncs the pending records and closes the journal.
+     *
+     * @throws IOException If the journal cannot be written
+     */
+    public synchronized void close() throws IOException {
+        syncer.shutdown();
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void sync() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        pending.reset();
+        pendingRecords = 0;
+        lastSync = System.nanoTime();
+    }
+
+    private static class Record {
+        private final long size;
+        private final long lastModified;
+        private final String destination;
+
+        Record(long size, long lastModified, String destination) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.destination = destination;
+        }
+    }
+}
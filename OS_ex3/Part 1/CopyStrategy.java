@@ -0,0 +1,19 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A way of copying the contents of one file into another. Implementations may
+ * keep per-instance buffers, so every copier thread uses its own instance.
+ */
+public interface CopyStrategy {
+
+    /**
+     * Copies the contents of the source file into the target file. The target
+     * is created if it does not exist and truncated if it does.
+     * 
+     * @param source The file to copy, with the attributes it was listed with
+     * @param target The file to copy into
+     * @throws IOException If an error occurs during the copy process
+     */
+    void copy(FileEntry source, Path target) throws IOException;
+}
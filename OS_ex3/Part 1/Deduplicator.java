@@ -0,0 +1,237 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Finds the matches whose contents this run already copied, so that they are
+ * skipped or hard-linked to the first copy rather than copied again, and
+ * writes the SHA-256 of every copy to a manifest in the format of
+ * <code>sha256sum</code>, so the copies can be verified with
+ * <code>sha256sum -c</code> without the copiers reading them back.
+ * <p>
+ * Copies are hashed while they are copied. Hashing every match before copying
+ * it would read it twice, so only the matches that may be duplicates are: a
+ * match whose size no earlier match had cannot be one, and neither can a match
+ * whose first and last {@link #PARTIAL_BYTES} bytes differ from those of every
+ * earlier match of its size. Two copiers may still copy the same contents at
+ * once; the second to finish then drops its copy.
+ */
+public class Deduplicator {
+
+    public static final String DEFAULT_MANIFEST_NAME = ".disksearcher.sha256";
+
+    public static final int PARTIAL_BYTES = 4096;
+
+    private final String mode;
+    private final int bufferSize;
+    private final Writer manifest;
+    private final Map<Long, SizeClass> sizes = new ConcurrentHashMap<>();
+    private final Map<String, String> copies = new ConcurrentHashMap<>();
+
+    private Deduplicator(String mode, int bufferSize, Writer manifest) {
+        this.mode = mode;
+        this.bufferSize = bufferSize;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Opens the manifest. When resuming, the copies the manifest lists that are
+     * still in the destination directory count as copied by this run, and new
+     * lines are appended to it; otherwise the manifest is started afresh.
+     *
+     * @param mode        "skip" to drop duplicates, "link" to hard-link them
+     *                    to the first copy, or "none" to only write the
+     *                    manifest
+     * @param file        The manifest file
+     * @param destination The destination directory
+     * @param resume      Whether a previous run is resumed
+     * @param bufferSize  Size of the direct buffer the copiers hash through
+     * @return the deduplicator
+     * @throws IOException If the manifest cannot be opened
+     */
+    public static Deduplicator open(String mode, Path file, File destination, boolean resume, int bufferSize)
+            throws IOException {
+        if (!mode.equals("skip") && !mode.equals("link") && !mode.equals("none")) {
+            throw new IllegalArgumentException("Unknown deduplication mode: " + mode);
+        }
+        Deduplicator dedup;
+        if (resume && Files.isRegularFile(file)) {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            dedup = new Deduplicator(mode, bufferSize, Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND));
+            for (String line : lines) {
+                dedup.replay(line, destination);
+            }
+        } else {
+            dedup = new Deduplicator(mode, bufferSize, Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        }
+        return dedup;
+    }
+
+    /**
+     * Creates the copy strategy a copier hashes its copies with.
+     *
+     * @return a strategy owned by the calling copier
+     */
+    public HashingCopyStrategy newCopyStrategy() {
+        return new HashingCopyStrategy(bufferSize);
+    }
+
+    /**
+     * Checks whether duplicates are hard-linked rather than skipped.
+     *
+     * @return true if duplicates are hard-linked to the first copy
+     */
+    public boolean isLinking() {
+        return mode.equals("link");
+    }
+
+    /**
+     * Looks for an earlier copy with the same contents as a file. The file is
+     * hashed only if an earlier match has its size and the same first and last
+     * bytes; its hash is then left in the copier's strategy.
+     *
+     * @param file    The file to copy
+     * @param hashing The strategy of the calling copier
+     * @return the name of the earlier copy, or null if the file has to be
+     *         copied
+     * @throws IOException If the file cannot be read
+     */
+    public String findDuplicate(FileEntry file, HashingCopyStrategy hashing) throws IOException {
+        if (mode.equals("none")) {
+            return null;
+        }
+        SizeClass sizeClass = sizes.putIfAbsent(file.size(), new SizeClass(file));
+        if (sizeClass == null) {
+            // The first match of its size
+            return null;
+        }
+        synchronized (sizeClass) {
+            if (!sizeClass.firstHashed) {
+                sizeClass.firstHashed = true;
+                try {
+                    sizeClass.partials.add(partialHash(sizeClass.first));
+                } catch (IOException e) {
+                    // Its copy failed too, or it will
+                }
+            }
+        }
+        if (sizeClass.partials.add(partialHash(file))) {
+            return null;
+        }
+        return copies.get(hashing.hash(file));
+    }
+
+    /**
+     * Registers a completed copy under its hash, unless an earlier copy has
+     * the same contents.
+     *
+     * @param hash The SHA-256 of the copy
+     * @param name The name of the copy
+     * @return the name of the earlier copy with the same contents, or null if
+     *         this copy is kept
+     */
+    public String register(String hash, String name) {
+        if (mode.equals("none")) {
+            return null;
+        }
+        return copies.putIfAbsent(hash, name);
+    }
+
+    /**
+     * Appends a copy, or a hard link, to the manifest.
+     *
+     * @param hash The SHA-256 of the copy
+     * @param name The name of the copy in the destination directory
+     * @throws IOException If the manifest cannot be written
+     */
+    public synchronized void record(String hash, String name) throws IOException {
+        if (name.indexOf('\\') >= 0 || name.indexOf('\n') >= 0) {
+            // Escaped as sha256sum does
+            manifest.write('\\');
+            name = name.replace("\\", "\\\\").replace("\n", "\\n");
+        }
+        manifest.write(hash);
+        manifest.write("  ");
+        manifest.write(name);
+        manifest.write('\n');
+    }
+
+    /**
+     * Writes the pending lines and closes the manifest.
+     *
+     * @throws IOException If the manifest cannot be written
+     */
+    public synchronized void close() throws IOException {
+        manifest.close();
+    }
+
+    private void replay(String line, File destination) {
+        boolean escaped = line.startsWith("\\");
+        int separator = line.indexOf("  ");
+        if (separator == -1) {
+            return;
+        }
+        String hash = line.substring(escaped ? 1 : 0, separator);
+        String name = line.substring(separator + 2);
+        if (escaped) {
+            name = name.replace("\\n", "\n").replace("\\\\", "\\");
+        }
+        FileEntry copy = DirectoryListing.fileEntry(new File(destination, name).toPath());
+        if (copy != null && copies.putIfAbsent(hash, name) == null) {
+            sizes.putIfAbsent(copy.size(), new SizeClass(copy));
+        }
+    }
+
+    private static long partialHash(FileEntry file) throws IOException {
+        long size = file.size();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 2 * PARTIAL_BYTES));
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            if (size <= 2 * PARTIAL_BYTES) {
+                readFully(channel, buffer, 0);
+            } else {
+                buffer.limit(PARTIAL_BYTES);
+                readFully(channel, buffer, 0);
+                buffer.limit(2 * PARTIAL_BYTES);
+                readFully(channel, buffer, size - 2 * PARTIAL_BYTES);
+            }
+        }
+        buffer.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(buffer);
+        return crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        // The buffer position is added so that a second read lands after the first
+        while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+            // Keep reading until the buffer is full or the file ends
+        }
+    }
+
+    /**
+     * The matches of one size: the first one, hashed only once a second one
+     * shows up, and the partial hashes of all of them.
+     */
+    private static class SizeClass {
+        private final FileEntry first;
+        private final Set<Long> partials = ConcurrentHashMap.newKeySet();
+        private boolean firstHashed;
+
+        SizeClass(FileEntry first) {
+            this.first = first;
+        }
+    }
+}
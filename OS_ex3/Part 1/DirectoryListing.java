@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The contents of one directory, split into subdirectories and regular files.
+ * A directory is read once, with a single attribute query per entry, and the
+ * listing is shared by the stages: the scouter descends into the
+ * subdirectories and the searchers look at the files. Where the platform
+ * returns attributes with the directory entries (e.g. on Windows), the
+ * attribute query does not need a system call of its own.
+ */
+public class DirectoryListing {
+
+    private final FileEntry directory;
+    private final List<FileEntry> subdirectories;
+    private final List<FileEntry> files;
+
+    /**
+     * Constructor.
+     * 
+     * @param directory      The listed directory
+     * @param subdirectories The subdirectories of the directory
+     * @param files          The regular files in the directory
+     */
+    public DirectoryListing(FileEntry directory, List<FileEntry> subdirectories, List<FileEntry> files) {
+        this.directory = directory;
+        this.subdirectories = subdirectories;
+        this.files = files;
+    }
+
+    /**
+     * Reads the given directory. Entries whose attributes cannot be read (e.g.
+     * broken links) are skipped; if the directory itself cannot be read, the
+     * listing is empty.
+     * 
+     * @param directory The directory to read
+     * @return the listing of the directory
+     */
+    public static DirectoryListing read(FileEntry directory) {
+        List<FileEntry> subdirectories = new ArrayList<>();
+        List<FileEntry> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.getPath())) {
+            for (Path path : stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    subdirectories.add(new FileEntry(path, attributes));
+                } else if (attributes.isRegularFile()) {
+                    files.add(new FileEntry(path, attributes));
+                }
+            }
+        } catch (IOException | SecurityException e) {
+            return new DirectoryListing(directory, Collections.emptyList(), Collections.emptyList());
+        }
+        return new DirectoryListing(directory, subdirectories, files);
+    }
+
+    /**
+     * Creates an entry for the given path, or returns null if it is not an
+     * existing directory.
+     * 
+     * @param path The path of the directory
+     * @return the directory entry, or null
+     */
+    public static FileEntry directoryEntry(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isDirectory() ? new FileEntry(path, attributes) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates an entry for the given path, or returns null if it is not an
+     * existing regular file.
+     * 
+     * @param path The path of the file
+     * @return the file entry, or null
+     */
+    public static FileEntry fileEntry(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? new FileEntry(path, attributes) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the listed directory.
+     * 
+     * @return the directory entry
+     */
+    public FileEntry getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the subdirectories of the listed directory.
+     * 
+     * @return the subdirectory entries
+     */
+    public List<FileEntry> getSubdirectories() {
+        return subdirectories;
+    }
+
+    /**
+     * Returns the regular files in the listed directory.
+     * 
+     * @return the file entries
+     */
+    public List<FileEntry> getFiles() {
+        return files;
+    }
+}
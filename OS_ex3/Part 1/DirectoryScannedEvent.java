@@ -0,0 +1,22 @@
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recorded for every directory listed by a scouter. The event's
+ * duration covers the listing.
+ */
+@Name("DiskSearcher.DirectoryScanned")
+@Label("Directory Scanned")
+@Category("DiskSearcher")
+public class DirectoryScannedEvent extends jdk.jfr.Event {
+
+    @Label("Directory")
+    String directory;
+
+    @Label("Files")
+    int files;
+
+    @Label("Subdirectories")
+    int subdirectories;
+}
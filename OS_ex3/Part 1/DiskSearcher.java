@@ -1,4 +1,27 @@
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Main application class. This application searches for all files under some
@@ -11,6 +34,58 @@ public class DiskSearcher extends java.lang.Object {
 
     public static final int RESULTS_QUEUE_CAPACITY = 50;
 
+    public static final long DEFAULT_PROGRESS_SECONDS = 5;
+
+    public static final long SHUTDOWN_GRACE_SECONDS = 5;
+
+    public static final String USAGE = "Usage: java DiskSearcher <filename-pattern> <file-extension> <root directory> <destination directory> <# of searchers> <# of copiers> [options]\n"
+            + "Options:\n"
+            + "  --threads=platform|virtual run every stage on its own platform thread or on a virtual thread\n"
+            + "                             (default: platform)\n"
+            + "  --queue=monitor|lockfree|condition\n"
+            + "                             queue implementation used between the stages\n"
+            + "                             (default: monitor, or condition with virtual threads)\n"
+            + "  --schedule=fifo|locality   order in which the copiers take the matches: as found, or grouped by\n"
+            + "                             directory and ordered by inode (default: fifo)\n"
+            + "  --output=copy|ndjson|nul   copy the matches, or print them to standard output as JSON lines or\n"
+            + "                             NUL-terminated paths; the destination may then be \"-\" (default: copy)\n"
+            + "  --attributes               print the size and modification time of every match\n"
+            + "  --match=literal|any|glob|regex\n"
+            + "                             how the pattern is matched against the name without its extension:\n"
+            + "                             contains the literal, contains one of comma-separated literals, matches\n"
+            + "                             the glob, or contains a match of the regular expression (default: literal);\n"
+            + "                             the extension may list several comma-separated extensions\n"
+            + "  --exclude=GLOB[,GLOB...]   skip directories whose name, or path below the root if the glob has a /,\n"
+            + "                             matches one of the globs\n"
+            + "  --max-depth=N              do not descend more than N levels below the root (0: the root only)\n"
+            + "  --one-file-system          do not descend into directories on another device than the root\n"
+            + "  --ignore-file[=NAME]       honor .gitignore-style ignore files with this name (default: .gitignore)\n"
+            + "  --min-size=BYTES           only match files of at least this size\n"
+            + "  --max-size=BYTES           only match files of at most this size\n"
+            + "  --modified-after=TIME      only match files modified at or after TIME, an ISO-8601 instant or date\n"
+            + "  --modified-before=TIME     only match files modified at or before TIME\n"
+            + "  --content=TEXT[,TEXT...]   only match files whose contents contain one of the literals\n"
+            + "  --max-matches=N            stop the search once N matches are found; they are still copied or printed\n"
+            + "  --timeout=SECONDS          give up after this many seconds, dropping the matches not yet copied\n"
+            + "                             (the index is not saved when the search stops early)\n"
+            + "  --index[=FILE]             reuse the index of a previous run to skip unchanged work\n"
+            + "                             (default file: <destination directory>/" + SearchIndex.DEFAULT_FILE_NAME + ")\n"
+            + "  --journal[=FILE]           journal completed copies so that a failed run can be resumed\n"
+            + "                             (default file: <destination directory>/" + CopyJournal.DEFAULT_FILE_NAME + ")\n"
+            + "  --resume                   skip the copies journaled by a previous run and keep journaling\n"
+            + "  --dedup=skip|link          copy files with the same contents once, and skip or hard-link the others\n"
+            + "  --manifest[=FILE]          write the SHA-256 of every copy in sha256sum format, computed while copying\n"
+            + "                             (default file: <destination directory>/" + Deduplicator.DEFAULT_MANIFEST_NAME + ";\n"
+            + "                             implied by --dedup, which also keeps large files from being split)\n"
+            + "  --progress[=SECONDS]       print a progress line every few seconds (default: 5) and a summary\n"
+            + "  --scouters=N               number of threads listing directories (default: 1)\n"
+            + "  --copy-buffer=BYTES        direct buffer size used to copy small files (default: 65536)\n"
+            + "  --transfer-threshold=BYTES files of at least this size are copied with transferTo (default: 1048576)\n"
+            + "  --chunk-threshold=BYTES    files of at least this size are split between the copiers (default: 67108864)\n"
+            + "  --chunk-size=BYTES         size of the chunks large files are split into (default: 8388608)\n"
+            + "  --max-searchers=N          let the pool of searchers grow up to N while the directory queue backs up\n"
+            + "  --max-copiers=N            let the pool of copiers grow up to N while the results queue backs up";
+
     /**
      * Default constructor for DiskSearcher class
      */
@@ -24,9 +99,8 @@ public class DiskSearcher extends java.lang.Object {
      * @param args Command line arguments
      */
     public static void main(String[] args) {
-        if (args.length != 6) {
-            System.out.println(
-                    "Usage: java DiskSearcher <filename-pattern> <file-extension> <root directory> <destination directory> <# of searchers> <# of copiers>");
+        if (args.length < 6) {
+            System.out.println(USAGE);
             System.exit(1);
         }
         Boolean validArgs[] = validateArgs(args);
@@ -42,34 +116,457 @@ public class DiskSearcher extends java.lang.Object {
         int numSearchers = Integer.parseInt(args[4]);
         int numCopiers = Integer.parseInt(args[5]);
 
-        SynchronizedQueue<File> directoryQueue = new SynchronizedQueue<>(DIRECTORY_QUEUE_CAPACITY);
-        SynchronizedQueue<File> resultsQueue = new SynchronizedQueue<>(RESULTS_QUEUE_CAPACITY);
+        ProducerConsumerQueue<DirectoryListing> directoryQueue = null;
+        ProducerConsumerQueue<FileEntry> resultsQueue = null;
+        int copyBufferSize = 0;
+        long transferThreshold = 0;
+        int numScouters = 0;
+        ContentMatcher contentMatcher = null;
+        FileNameMatcher nameMatcher = null;
+        PruningRules pruning = null;
+        AttributeFilter attributeFilter = null;
+        SearchIndex index = null;
+        CopyJournal journal = null;
+        Deduplicator dedup = null;
+        ExecutorService executor = null;
+        long progressSeconds = 0;
+        int maxSearchers = 0;
+        int maxCopiers = 0;
+        String output = null;
+        boolean printAttributes = false;
+        long chunkThreshold = 0;
+        long chunkSize = 0;
+        MatchLimit matchLimit = null;
+        long timeoutSeconds = 0;
+        try {
+            Map<String, String> options = parseOptions(args);
+            String threads = options.getOrDefault("threads", "platform");
+            String queueType = options.getOrDefault("queue", threads.equals("virtual") ? "condition" : "monitor");
+            if (threads.equals("virtual") && queueType.equals("monitor")) {
+                throw new IllegalArgumentException("The monitor queue would pin virtual threads to their carriers");
+            }
+            executor = createExecutor(threads);
+            directoryQueue = createQueue(queueType, DIRECTORY_QUEUE_CAPACITY, "directories");
+            String schedule = options.getOrDefault("schedule", "fifo");
+            if (schedule.equals("locality")) {
+                if (threads.equals("virtual")) {
+                    throw new IllegalArgumentException("The locality queue would pin virtual threads to their carriers");
+                }
+                resultsQueue = new LocalityQueue(RESULTS_QUEUE_CAPACITY, "results");
+            } else if (schedule.equals("fifo")) {
+                resultsQueue = createQueue(queueType, RESULTS_QUEUE_CAPACITY, "results");
+            } else {
+                throw new IllegalArgumentException("Unknown schedule: " + schedule);
+            }
+            if (options.containsKey("progress")) {
+                String interval = options.get("progress");
+                progressSeconds = interval.equals("true") ? DEFAULT_PROGRESS_SECONDS
+                        : longOption(options, "progress", DEFAULT_PROGRESS_SECONDS);
+            }
+            numScouters = intOption(options, "scouters", 1, 1, Integer.MAX_VALUE);
+            nameMatcher = FileNameMatcher.compile(options.getOrDefault("match", "literal"), pattern, extension);
+            String exclude = options.getOrDefault("exclude", "");
+            int maxDepth = intOption(options, "max-depth", Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+            boolean oneFileSystem = options.containsKey("one-file-system");
+            String ignoreFile = options.get("ignore-file");
+            if ("true".equals(ignoreFile)) {
+                ignoreFile = ".gitignore";
+            }
+            pruning = new PruningRules(exclude.isEmpty() ? new ArrayList<>() : Arrays.asList(exclude.split(",")),
+                    maxDepth, oneFileSystem, ignoreFile);
+            long minSize = longOption(options, "min-size", 0, 0, Long.MAX_VALUE);
+            long maxSize = longOption(options, "max-size", Long.MAX_VALUE, 0, Long.MAX_VALUE);
+            long modifiedAfter = timeOption(options, "modified-after", Long.MIN_VALUE);
+            long modifiedBefore = timeOption(options, "modified-before", Long.MAX_VALUE);
+            attributeFilter = new AttributeFilter(minSize, maxSize, modifiedAfter, modifiedBefore);
+            output = options.getOrDefault("output", "copy");
+            printAttributes = options.containsKey("attributes");
+            if (output.equals("copy") && args[3].equals("-")) {
+                throw new IllegalArgumentException("Copying the matches needs a destination directory");
+            }
+            if (!output.equals("copy") && (options.containsKey("index") || options.containsKey("journal")
+                    || options.containsKey("resume") || options.containsKey("dedup")
+                    || options.containsKey("manifest"))) {
+                throw new IllegalArgumentException(
+                        "The index, journal and manifest can only be used when copying the matches");
+            }
+            if (options.containsKey("journal") || options.containsKey("resume")) {
+                String journalFile = options.getOrDefault("journal", "true");
+                File file = journalFile.equals("true") ? new File(destinationDirectory, CopyJournal.DEFAULT_FILE_NAME)
+                        : new File(journalFile);
+                boolean resume = options.containsKey("resume");
+                journal = CopyJournal.open(file.toPath(), resume);
+                if (resume) {
+                    journal.removePartFiles(destinationDirectory);
+                }
+            }
+            if (options.containsKey("dedup") || options.containsKey("manifest")) {
+                String manifestFile = options.getOrDefault("manifest", "true");
+                File file = manifestFile.equals("true")
+                        ? new File(destinationDirectory, Deduplicator.DEFAULT_MANIFEST_NAME)
+                        : new File(manifestFile);
+                dedup = Deduplicator.open(options.getOrDefault("dedup", "none"), file.toPath(), destinationDirectory,
+                        options.containsKey("resume"),
+                        intOption(options, "copy-buffer", BufferCopyStrategy.DEFAULT_BUFFER_SIZE, 1,
+                                Integer.MAX_VALUE));
+            }
+            if (options.containsKey("content")) {
+                contentMatcher = new ContentMatcher(Arrays.asList(options.get("content").split(",")));
+            }
+            if (options.containsKey("index")) {
+                String indexFile = options.get("index");
+                File file = indexFile.equals("true") ? new File(destinationDirectory, SearchIndex.DEFAULT_FILE_NAME)
+                        : new File(indexFile);
+                // Every option that decides which files of a directory match or
+                // which subdirectories are searched: the records of a search
+                // with other filters list other files
+                String searchKey = String.join("\0", pattern, extension, options.getOrDefault("content", ""),
+                        options.getOrDefault("match", "literal"), exclude, String.valueOf(maxDepth),
+                        String.valueOf(oneFileSystem), String.valueOf(ignoreFile), String.valueOf(minSize),
+                        String.valueOf(maxSize), String.valueOf(modifiedAfter), String.valueOf(modifiedBefore));
+                index = SearchIndex.load(file.toPath(), searchKey, contentMatcher == null);
+            }
+            copyBufferSize = intOption(options, "copy-buffer", BufferCopyStrategy.DEFAULT_BUFFER_SIZE, 1,
+                    Integer.MAX_VALUE);
+            transferThreshold = longOption(options, "transfer-threshold",
+                    AdaptiveCopyStrategy.DEFAULT_TRANSFER_THRESHOLD);
+            maxSearchers = Math.max(intOption(options, "max-searchers", numSearchers, 1, Integer.MAX_VALUE),
+                    numSearchers);
+            maxCopiers = Math.max(intOption(options, "max-copiers", numCopiers, 1, Integer.MAX_VALUE), numCopiers);
+            chunkThreshold = longOption(options, "chunk-threshold", ChunkPool.DEFAULT_CHUNK_THRESHOLD);
+            chunkSize = longOption(options, "chunk-size", ChunkPool.DEFAULT_CHUNK_SIZE);
+            matchLimit = options.containsKey("max-matches") ? new MatchLimit(longOption(options, "max-matches", 0))
+                    : MatchLimit.NONE;
+            timeoutSeconds = longOption(options, "timeout", 0);
+        } catch (IllegalArgumentException e) {
+            System.err.println(USAGE + "\n" + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Cannot open the journal or manifest: " + e.getMessage());
+            System.exit(1);
+        }
+
+        PipelineMetrics metrics = new PipelineMetrics();
+        ProducerConsumerQueue<?>[] queues = { directoryQueue, resultsQueue };
+        ScheduledExecutorService progress = null;
+        if (progressSeconds > 0) {
+            progress = daemonScheduler("progress");
+            progress.scheduleAtFixedRate(() -> System.err.println(metrics.progressLine(queues)), progressSeconds,
+                    progressSeconds, TimeUnit.SECONDS);
+        }
+        ScheduledExecutorService timeout = null;
+        if (timeoutSeconds > 0) {
+            long seconds = timeoutSeconds;
+            timeout = daemonScheduler("timeout");
+            timeout.schedule(() -> {
+                System.err.println("Timed out after " + seconds + " seconds");
+                closeAll(queues);
+            }, timeoutSeconds, TimeUnit.SECONDS);
+        }
+        // Ctrl-C closes the queues and gives the stages a moment to wind down
+        // and sync the journal before the JVM exits
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread cancel = new Thread(() -> {
+            closeAll(queues);
+            try {
+                finished.await(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "cancel");
+        Runtime.getRuntime().addShutdownHook(cancel);
 
-        Thread scouter = new Thread(new Scouter(directoryQueue, rootDirectory));
-        scouter.start();
+        List<Future<?>> stages = new ArrayList<>();
+        stages.add(executor.submit(numScouters > 1
+                ? new ParallelScouter(directoryQueue, rootDirectory, numScouters, pruning, index, metrics)
+                : new Scouter(directoryQueue, rootDirectory, pruning, index, metrics)));
 
-        Thread[] searchers = new Thread[numSearchers];
-        for (int i = 0; i < numSearchers; i++) {
-            searchers[i] = new Thread(new Searcher(pattern, extension, directoryQueue, resultsQueue));
-            searchers[i].start();
+        ProducerConsumerQueue<DirectoryListing> directories = directoryQueue;
+        ProducerConsumerQueue<FileEntry> results = resultsQueue;
+        ContentMatcher matcher = contentMatcher;
+        MatchLimit limit = matchLimit;
+        FileNameMatcher names = nameMatcher;
+        AttributeFilter filter = attributeFilter;
+        SearchIndex searchIndex = index;
+        CopyJournal copyJournal = journal;
+        Deduplicator deduplicator = dedup;
+        int bufferSize = copyBufferSize;
+        long threshold = transferThreshold;
+        Supplier<Searcher> searcherFactory = () -> new Searcher(names, filter, matcher, limit, directories,
+                results, metrics);
+        NameRegistry registry = null;
+        ChunkPool chunks = null;
+        ResultPrinter printer = null;
+        if (output.equals("copy")) {
+            registry = new NameRegistry(destinationDirectory);
+            // Chunks are copied out of order, so they cannot be hashed on the way
+            chunks = maxCopiers > 1 && dedup == null ? new ChunkPool(chunkSize, chunkThreshold) : null;
+        } else {
+            // A single printer replaces the copiers
+            Writer out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+            printer = new ResultPrinter(resultsQueue, out, output, printAttributes, metrics,
+                    () -> closeAll(queues));
+            numCopiers = 0;
+            maxCopiers = 0;
         }
+        NameRegistry copyNames = registry;
+        ChunkPool copyChunks = chunks;
+        Supplier<Copier> copierFactory = () -> new Copier(destinationDirectory, results,
+                new AdaptiveCopyStrategy(bufferSize, threshold), copyNames, copyChunks, copyJournal,
+                deduplicator, searchIndex, metrics);
 
-        Thread[] copiers = new Thread[numCopiers];
-        for (int i = 0; i < numCopiers; i++) {
-            copiers[i] = new Thread(new Copier(destinationDirectory, resultsQueue));
-            copiers[i].start();
+        if (maxSearchers > numSearchers || maxCopiers > numCopiers) {
+            stages.add(executor.submit(new PoolAutoscaler(executor, directoryQueue, resultsQueue, searcherFactory,
+                    copierFactory, new int[] { numSearchers, 1, maxSearchers },
+                    new int[] { numCopiers, Math.min(numCopiers, 1), maxCopiers },
+                    PoolAutoscaler.DEFAULT_INTERVAL_MILLIS)));
+        } else {
+            for (int i = 0; i < numSearchers; i++) {
+                stages.add(executor.submit(searcherFactory.get()));
+            }
+            for (int i = 0; i < numCopiers; i++) {
+                stages.add(executor.submit(copierFactory.get()));
+            }
+        }
+        if (printer != null) {
+            // Submitted after the searchers registered to the results queue
+            stages.add(executor.submit(printer));
         }
 
         try {
-            scouter.join();
-            for (Thread searcher : searchers) {
-                searcher.join();
+            for (Future<?> stage : stages) {
+                try {
+                    stage.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
             }
-            for (Thread copier : copiers) {
-                copier.join();
+            if (journal != null) {
+                journal.close();
             }
-        } catch (InterruptedException e) {
+            if (dedup != null) {
+                dedup.close();
+            }
+            if (index != null && !directoryQueue.isClosed()) {
+                // A search that stopped early did not see the whole tree
+                index.save();
+            }
+        } catch (InterruptedException | IOException e) {
             e.printStackTrace();
+        } finally {
+            // The autoscaler may start workers until it finishes
+            executor.shutdown();
+            finished.countDown();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(cancel);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+        }
+        if (timeout != null) {
+            timeout.shutdownNow();
+        }
+        if (progress != null) {
+            progress.shutdownNow();
+            System.err.print(metrics.summary(directoryQueue, resultsQueue));
+        }
+        if (printer != null && printer.getFailure() != null) {
+            System.err.println("Cannot write the results: " + printer.getFailure().getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses the optional arguments that follow the six positional ones. Every
+     * option has the form <code>--name=value</code>, or <code>--name</code> for
+     * flags, in which case its value is "true".
+     * 
+     * @param args the arguments passed to the program
+     * @return a map from option name to its value
+     * @throws IllegalArgumentException if an optional argument is malformed
+     */
+    public static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 6; i < args.length; i++) {
+            if (!args[i].startsWith("--") || args[i].length() == 2) {
+                throw new IllegalArgumentException("Invalid option: " + args[i]);
+            }
+            int separator = args[i].indexOf('=');
+            if (separator == -1) {
+                options.put(args[i].substring(2), "true");
+            } else {
+                options.put(args[i].substring(2, separator), args[i].substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Returns the value of a numeric option.
+     * 
+     * @param options      the parsed options
+     * @param name         the option name
+     * @param defaultValue the value to use when the option is absent
+     * @return the option value
+     * @throws IllegalArgumentException if the value is not a positive integer
+     */
+    public static long longOption(Map<String, String> options, String name, long defaultValue) {
+        return longOption(options, name, defaultValue, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the value of a numeric option that has to fit an int, such as a
+     * thread count or a buffer size.
+     * 
+     * @param options      the parsed options
+     * @param name         the option name
+     * @param defaultValue the value to use when the option is absent
+     * @param min          the smallest value allowed
+     * @param max          the largest value allowed
+     * @return the option value
+     * @throws IllegalArgumentException if the value is not an integer from min
+     *                                  to max
+     */
+    public static int intOption(Map<String, String> options, String name, int defaultValue, int min, int max) {
+        return (int) longOption(options, name, defaultValue, min, max);
+    }
+
+    /**
+     * Returns the value of a numeric option within a range.
+     * 
+     * @param options      the parsed options
+     * @param name         the option name
+     * @param defaultValue the value to use when the option is absent
+     * @param min          the smallest value allowed
+     * @param max          the largest value allowed
+     * @return the option value
+     * @throws IllegalArgumentException if the value is not an integer from min
+     *                                  to max
+     */
+    private static long longOption(Map<String, String> options, String name, long defaultValue, long min,
+            long max) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        String kind = min == 1 ? "a positive integer" : min == 0 ? "a non-negative integer" : "an integer from " + min;
+        throw new IllegalArgumentException(
+                "Option --" + name + " must be " + kind + (max < Long.MAX_VALUE ? " up to " + max : ""));
+    }
+
+    /**
+     * Creates a single-threaded scheduler whose thread does not keep the JVM
+     * alive.
+     * 
+     * @param name the name of the thread
+     * @return the scheduler
+     */
+    private static ScheduledExecutorService daemonScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Closes the queues between the stages, which makes every stage finish
+     * what it is doing and stop.
+     * 
+     * @param queues the queues to close
+     */
+    private static void closeAll(ProducerConsumerQueue<?>[] queues) {
+        for (ProducerConsumerQueue<?> queue : queues) {
+            queue.close();
+        }
+    }
+
+    /**
+     * Returns the value of a time option, given as an ISO-8601 instant such as
+     * <code>2024-05-01T12:00:00Z</code> or a date such as
+     * <code>2024-05-01</code>, which stands for its start in the local time
+     * zone.
+     * 
+     * @param options      the parsed options
+     * @param name         the option name
+     * @param defaultValue the value to use when the option is absent
+     * @return the option value, in milliseconds since the epoch
+     * @throws IllegalArgumentException if the value is not an instant or a date
+     */
+    public static long timeOption(Map<String, String> options, String name, long defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            if (value.contains("T")) {
+                return Instant.parse(value).toEpochMilli();
+            }
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Option --" + name + " must be an ISO-8601 instant or date");
+        }
+    }
+
+    /**
+     * Creates a queue of the given implementation type.
+     * 
+     * @param <T>      type of data items
+     * @param type     "monitor" for {@link SynchronizedQueue}, "lockfree" for
+     *                 {@link LockFreeQueue} or "condition" for
+     *                 {@link ConditionQueue}
+     * @param capacity queue capacity
+     * @param name     queue name, used in metrics
+     * @return the new queue
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    public static <T> ProducerConsumerQueue<T> createQueue(String type, int capacity, String name) {
+        switch (type) {
+            case "monitor":
+                return new SynchronizedQueue<>(capacity, name);
+            case "lockfree":
+                return new LockFreeQueue<>(capacity, name);
+            case "condition":
+                return new ConditionQueue<>(capacity, name);
+            default:
+                throw new IllegalArgumentException("Unknown queue type: " + type);
+        }
+    }
+
+    /**
+     * Creates the executor the stages run on. Every stage is a long-running task,
+     * so each one gets a thread of its own: a new platform thread, or a virtual
+     * thread that only occupies an OS thread while it is not blocked.
+     * Virtual threads are looked up at run time so that the program still
+     * compiles and runs on releases that do not have them; there, the platform
+     * executor is used instead.
+     * 
+     * @param threads "platform" or "virtual"
+     * @return the executor
+     * @throws IllegalArgumentException if the thread kind is unknown
+     */
+    public static ExecutorService createExecutor(String threads) {
+        switch (threads) {
+            case "platform":
+                return Executors.newCachedThreadPool();
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                            .invoke(null);
+                } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                    System.err.println("Virtual threads are not available, using platform threads");
+                    return Executors.newCachedThreadPool();
+                }
+            default:
+                throw new IllegalArgumentException("Unknown thread kind: " + threads);
         }
     }
 
@@ -81,13 +578,13 @@ public class DiskSearcher extends java.lang.Object {
      */
     public static Boolean[] validateArgs(String[] args) {
         Boolean validArgs[] = new Boolean[7];
-        validArgs[1] = args.length == 6;
+        validArgs[1] = args.length >= 6;
         validArgs[0] = true;
         try {
             File destination = new File(args[3]);
             File root = new File(args[2]);
             validArgs[2] = root.exists() && root.isDirectory();
-            validArgs[3] = ((!destination.exists() && destination.mkdir()) || destination.isDirectory());
+            validArgs[3] = args[3].equals("-") || ((!destination.exists() && destination.mkdir()) || destination.isDirectory());
         } catch (NumberFormatException e) {
             validArgs[0] = false;
         }
@@ -117,8 +614,7 @@ public class DiskSearcher extends java.lang.Object {
      */
     public static void printError(Boolean[] validArgs) {
         StringBuilder sb = new StringBuilder();
-        sb.append(
-                "Usage: java DiskSearcher <filename-pattern> <file-extension> <root directory> <destination directory> <# of searchers> <# of copiers>\n");
+        sb.append(USAGE).append("\n");
         if (!validArgs[1]) {
             sb.append("Invalid number of arguments\n");
         }
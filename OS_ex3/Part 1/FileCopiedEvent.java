@@ -0,0 +1,21 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recorded for every file copied by a copier. The event's duration
+ * covers the copy.
+ */
+@Name("DiskSearcher.FileCopied")
+@Label("File Copied")
+@Category("DiskSearcher")
+public class FileCopiedEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+}
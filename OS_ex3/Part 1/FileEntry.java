@@ -0,0 +1,173 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+/**
+ * A directory entry together with the attributes read when its directory was
+ * listed. Stages pass entries to each other so that no stage has to query the
+ * file system again for the type, size or modification time of a file.
+ */
+public class FileEntry {
+
+    private final Path path;
+    private final String name;
+    private final BasicFileAttributes attributes;
+    private volatile long[] fileKey;
+
+    /**
+     * Constructor.
+     * 
+     * @param path       The path of the entry
+     * @param attributes The attributes of the entry
+     */
+    public FileEntry(Path path, BasicFileAttributes attributes) {
+        this.path = path;
+        Path fileName = path.getFileName();
+        this.name = fileName == null ? path.toString() : fileName.toString();
+        this.attributes = attributes;
+    }
+
+    /**
+     * Returns the path of the entry.
+     * 
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the name of the entry, i.e. the last element of its path.
+     * 
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the attributes read when the entry was listed.
+     * 
+     * @return the attributes
+     */
+    public BasicFileAttributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Returns the size of the entry in bytes, as listed.
+     * 
+     * @return the size
+     */
+    public long size() {
+        return attributes.size();
+    }
+
+    /**
+     * Returns the last modification time of the entry in milliseconds since the
+     * epoch, as listed.
+     * 
+     * @return the last modification time
+     */
+    public long lastModified() {
+        return attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Returns the entry as a {@link File}.
+     * 
+     * @return the file
+     */
+    public File toFile() {
+        return path.toFile();
+    }
+
+    /**
+     * Returns the device the entry is on, or -1 where the file system does not
+     * expose it. The first call of this method or {@link #inode()} may read the
+     * file's attributes, see {@link #readFileKey()}.
+     * 
+     * @return the device number, or -1
+     */
+    public long device() {
+        return fileKey()[0];
+    }
+
+    /**
+     * Returns the inode number of the entry, or -1 where the file system does
+     * not expose it. The first call of this method or {@link #device()} may
+     * read the file's attributes, see {@link #readFileKey()}.
+     * 
+     * @return the inode number, or -1
+     */
+    public long inode() {
+        return fileKey()[1];
+    }
+
+    private long[] fileKey() {
+        long[] key = fileKey;
+        if (key == null) {
+            // Two threads may both read it; they read the same numbers
+            key = readFileKey();
+            fileKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Reads the device and inode numbers from the <code>unix</code> attribute
+     * view where the file system supports it. Elsewhere, or if the file cannot
+     * be read any more, they are parsed out of the listed
+     * {@link BasicFileAttributes#fileKey()} as a fallback: the format of its
+     * string is not specified, but on the JDK's Unix file systems it is
+     * <code>(dev=803,ino=1234)</code>, with the device in hex, and a file key
+     * in any other format yields -1.
+     * 
+     * @return the device and inode numbers, -1 for those not available
+     */
+    private long[] readFileKey() {
+        if (path.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            try {
+                Map<String, Object> unix = Files.readAttributes(path, "unix:dev,ino");
+                Object dev = unix.get("dev");
+                Object ino = unix.get("ino");
+                if (dev instanceof Long && ino instanceof Long) {
+                    return new long[] { (Long) dev, (Long) ino };
+                }
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+                // Fall back to the file key
+            }
+        }
+        return new long[] { parseFileKey("dev=", 16), parseFileKey("ino=", 10) };
+    }
+
+    private long parseFileKey(String field, int radix) {
+        Object key = attributes == null ? null : attributes.fileKey();
+        if (key == null) {
+            return -1;
+        }
+        String text = key.toString();
+        int start = text.indexOf(field);
+        if (start < 0) {
+            return -1;
+        }
+        start += field.length();
+        int end = start;
+        while (end < text.length() && Character.digit(text.charAt(end), radix) >= 0) {
+            end++;
+        }
+        try {
+            return Long.parseLong(text.substring(start, end), radix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
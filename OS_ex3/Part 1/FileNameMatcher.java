@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a file name matches the search. A name matches if it ends
+ * with one of the wanted extensions and the rest of the name, its base, matches
+ * the pattern. The pattern is one of:
+ * <ul>
+ * <li>a literal the base must contain;</li>
+ * <li>several literals, any of which the base must contain, searched for
+ * together with an {@link AhoCorasickAutomaton} over the characters of the
+ * literals;</li>
+ * <li>a glob the whole base must match, where <code>*</code> stands for any
+ * characters and <code>?</code> for one;</li>
+ * <li>a regular expression found anywhere in the base.</li>
+ * </ul>
+ * The matcher is compiled once and shared by all searchers. Matching reads the
+ * characters of the name in place and allocates nothing, except for the regular
+ * expression matcher each thread creates on its first match.
+ */
+public class FileNameMatcher {
+
+    private final String literal;
+    private final AhoCorasickAutomaton automaton;
+    private final char[] classes;
+    private final ThreadLocal<Matcher> regex;
+    private final boolean wholeBase;
+
+    private final String[] extensionTable;
+    private final int[] extensionLengths;
+
+    private FileNameMatcher(String literal, List<String> literals, Pattern regex, boolean wholeBase,
+            List<String> extensions) {
+        this.literal = literal;
+        this.wholeBase = wholeBase;
+        this.regex = regex == null ? null : ThreadLocal.withInitial(() -> regex.matcher(""));
+
+        if (literals == null) {
+            this.automaton = null;
+            this.classes = null;
+        } else {
+            // Characters that occur in no literal share class 0
+            char[] charClasses = new char[Character.MAX_VALUE + 1];
+            int size = 1;
+            for (String text : literals) {
+                for (int i = 0; i < text.length(); i++) {
+                    if (charClasses[text.charAt(i)] == 0) {
+                        charClasses[text.charAt(i)] = (char) size++;
+                    }
+                }
+            }
+            this.classes = charClasses;
+            List<int[]> symbols = new ArrayList<>(literals.size());
+            for (String text : literals) {
+                int[] pattern = new int[text.length()];
+                for (int i = 0; i < text.length(); i++) {
+                    pattern[i] = charClasses[text.charAt(i)];
+                }
+                symbols.add(pattern);
+            }
+            this.automaton = new AhoCorasickAutomaton(symbols, size);
+        }
+
+        // Open addressing on the hash of the suffix; one probe sequence per
+        // distinct extension length
+        Set<String> distinct = new LinkedHashSet<>(extensions);
+        int capacity = Integer.highestOneBit(Math.max(distinct.size(), 1) * 2 - 1) << 1;
+        this.extensionTable = new String[capacity];
+        Set<Integer> lengths = new LinkedHashSet<>();
+        for (String extension : distinct) {
+            int slot = extension.hashCode() & (capacity - 1);
+            while (extensionTable[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            extensionTable[slot] = extension;
+            lengths.add(extension.length());
+        }
+        this.extensionLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Compiles a matcher.
+     *
+     * @param type       "literal", "any" (comma-separated literals), "glob" or
+     *                   "regex"
+     * @param pattern    The pattern, as given on the command line
+     * @param extensions The wanted extensions, comma-separated
+     * @return the matcher
+     * @throws IllegalArgumentException if the type is unknown or the pattern
+     *                                  is malformed
+     */
+    public static FileNameMatcher compile(String type, String pattern, String extensions) {
+        List<String> suffixes = Arrays.asList(extensions.split(",", -1));
+        switch (type) {
+            case "literal":
+                return new FileNameMatcher(pattern, null, null, false, suffixes);
+            case "any":
+                List<String> literals = new ArrayList<>();
+                for (String literal : pattern.split(",")) {
+                    if (literal.isEmpty()) {
+                        // The empty literal is in every name
+                        return new FileNameMatcher("", null, null, false, suffixes);
+                    }
+                    literals.add(literal);
+                }
+                return new FileNameMatcher(null, literals, null, false, suffixes);
+            case "glob":
+                return new FileNameMatcher(null, null, Pattern.compile(globToRegex(pattern)), true, suffixes);
+            case "regex":
+                return new FileNameMatcher(null, null, Pattern.compile(pattern), false, suffixes);
+            default:
+                throw new IllegalArgumentException("Unknown pattern type: " + type);
+        }
+    }
+
+    /**
+     * Compiles a matcher for a single literal and a single extension.
+     *
+     * @param pattern   The literal the base of the name must contain
+     * @param extension The extension the name must end with
+     * @return the matcher
+     */
+    public static FileNameMatcher literal(String pattern, String extension) {
+        return new FileNameMatcher(pattern, null, null, false, Arrays.asList(extension));
+    }
+
+    /**
+     * Checks whether a file name matches.
+     *
+     * @param name The name of the file
+     * @return true if the name has one of the extensions and its base matches
+     *         the pattern
+     */
+    public boolean matches(String name) {
+        int length = name.length();
+        for (int extensionLength : extensionLengths) {
+            if (extensionLength <= length && hasExtension(name, length - extensionLength, extensionLength)
+                    && baseMatches(name, length - extensionLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasExtension(String name, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        int mask = extensionTable.length - 1;
+        for (int slot = hash & mask; extensionTable[slot] != null; slot = (slot + 1) & mask) {
+            String extension = extensionTable[slot];
+            if (extension.length() == length && name.regionMatches(start, extension, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean baseMatches(String name, int baseLength) {
+        if (literal != null) {
+            // The first occurrence is the only one that can end inside the base
+            int index = name.indexOf(literal);
+            return index >= 0 && index + literal.length() <= baseLength;
+        }
+        if (automaton != null) {
+            int state = 0;
+            for (int i = 0; i < baseLength; i++) {
+                state = automaton.next(state, classes[name.charAt(i)]);
+                if (automaton.isAccepting(state)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Matcher matcher = regex.get().reset(name);
+        matcher.region(0, baseLength);
+        return wholeBase ? matcher.matches() : matcher.find();
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder sb = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i <= glob.length(); i++) {
+            char c = i < glob.length() ? glob.charAt(i) : '*';
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > start) {
+                sb.append(Pattern.quote(glob.substring(start, i)));
+            }
+            if (i < glob.length()) {
+                sb.append(c == '*' ? ".*" : ".");
+            }
+            start = i + 1;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Copies files through a direct {@link ByteBuffer}, like
+ * {@link BufferCopyStrategy}, and computes the SHA-256 of their contents on the
+ * way, so a copy is hashed without reading the file a second time. The buffer
+ * and the digest are reused for every file, which makes an instance unsafe to
+ * share between threads.
+ */
+public class HashingCopyStrategy implements CopyStrategy {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ByteBuffer buffer;
+    private final MessageDigest digest;
+    private String hash;
+
+    /**
+     * Constructor. Allocates a direct buffer of the given size.
+     *
+     * @param bufferSize Buffer size in bytes
+     */
+    public HashingCopyStrategy(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies the source file into the target file, one buffer at a time, and
+     * hashes every buffer before it is written.
+     *
+     * @param source The file to copy
+     * @param target The file to copy into
+     * @throws IOException If an error occurs during the copy process
+     */
+    @Override
+    public void copy(FileEntry source, Path target) throws IOException {
+        hash = null;
+        digest.reset();
+        try (FileChannel in = FileChannel.open(source.getPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        hash = toHex(digest.digest());
+    }
+
+    /**
+     * Hashes a file without copying it.
+     *
+     * @param source The file to hash
+     * @return the SHA-256 of its contents, in lowercase hex
+     * @throws IOException If the file cannot be read
+     */
+    public String hash(FileEntry source) throws IOException {
+        hash = null;
+        digest.reset();
+        try (FileChannel in = FileChannel.open(source.getPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        hash = toHex(digest.digest());
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the last file copied or hashed.
+     *
+     * @return the SHA-256 of its contents, in lowercase hex, or null if it
+     *         failed
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,59 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Searches for a single literal with the Boyer-Moore-Horspool algorithm. On a
+ * mismatch the search window is shifted by the distance of the window's last
+ * byte from the end of the pattern, so most bytes of the text are never looked
+ * at.
+ */
+public class HorspoolMatcher implements ByteMatcher {
+
+    private final byte[] pattern;
+    private final int[] shifts = new int[256];
+
+    /**
+     * Constructor. Precomputes the shift table of the pattern.
+     * 
+     * @param pattern The literal to look for
+     */
+    public HorspoolMatcher(byte[] pattern) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Pattern must not be empty");
+        }
+        this.pattern = pattern.clone();
+        Arrays.fill(shifts, pattern.length);
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xff] = pattern.length - 1 - i;
+        }
+    }
+
+    @Override
+    public boolean find(ByteBuffer buffer) {
+        int last = pattern.length - 1;
+        int end = buffer.limit() - last;
+        int start = buffer.position();
+        while (start < end) {
+            byte tail = buffer.get(start + last);
+            if (tail == pattern[last] && matchesAt(buffer, start)) {
+                return true;
+            }
+            start += shifts[tail & 0xff];
+        }
+        return false;
+    }
+
+    private boolean matchesAt(ByteBuffer buffer, int start) {
+        for (int i = pattern.length - 2; i >= 0; i--) {
+            if (buffer.get(start + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int maxPatternLength() {
+        return pattern.length;
+    }
+}
@@ -0,0 +1,160 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The rules of the <code>.gitignore</code>-style ignore files found on the way
+ * from the root to a directory. Each ignore file applies to its own directory
+ * and everything below it; a rule of a deeper file takes precedence over the
+ * rules of the files above it, and within a file the last matching rule wins.
+ * <p>
+ * Supported syntax: blank lines and <code>#</code> comments, <code>!</code> to
+ * re-include, a trailing <code>/</code> to match directories only, and
+ * <code>*</code>, <code>?</code>, <code>[...]</code> and <code>**</code>
+ * wildcards. A pattern that contains a <code>/</code> other than a trailing one
+ * is matched against the path relative to the ignore file's directory;
+ * otherwise it is matched against the name at any depth.
+ */
+public class IgnoreRules {
+
+    private final IgnoreRules parent;
+    private final Path base;
+    private final List<Rule> rules;
+    private final boolean anchored;
+
+    private IgnoreRules(IgnoreRules parent, Path base, List<Rule> rules) {
+        this.parent = parent;
+        this.base = base;
+        this.rules = rules;
+        boolean anyAnchored = false;
+        for (Rule rule : rules) {
+            anyAnchored |= rule.anchored;
+        }
+        this.anchored = anyAnchored;
+    }
+
+    /**
+     * Reads an ignore file and returns the rules below its directory.
+     *
+     * @param parent The rules inherited from the directories above, or null
+     * @param file   The ignore file
+     * @return the combined rules; the inherited ones if the file cannot be read
+     *         or has no rules
+     */
+    public static IgnoreRules read(IgnoreRules parent, Path file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return parent;
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (String line : lines) {
+            Rule rule = Rule.parse(line);
+            if (rule != null) {
+                rules.add(rule);
+            }
+        }
+        return rules.isEmpty() ? parent : new IgnoreRules(parent, file.getParent(), rules);
+    }
+
+    /**
+     * Checks whether an entry is ignored.
+     *
+     * @param entry     The entry
+     * @param directory Whether the entry is a directory
+     * @return true if the deepest rule that matches the entry ignores it
+     */
+    public boolean isIgnored(FileEntry entry, boolean directory) {
+        for (IgnoreRules node = this; node != null; node = node.parent) {
+            String relative = node.anchored ? node.base.relativize(entry.getPath()).toString() : null;
+            for (int i = node.rules.size() - 1; i >= 0; i--) {
+                Rule rule = node.rules.get(i);
+                if (rule.matches(entry.getName(), relative, directory)) {
+                    return !rule.negated;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One line of an ignore file.
+     */
+    private static class Rule {
+        private final Pattern pattern;
+        private final boolean negated;
+        private final boolean directoryOnly;
+        private final boolean anchored;
+
+        private Rule(Pattern pattern, boolean negated, boolean directoryOnly, boolean anchored) {
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+        }
+
+        static Rule parse(String line) {
+            String text = line.strip();
+            if (text.isEmpty() || text.startsWith("#")) {
+                return null;
+            }
+            boolean negated = text.startsWith("!");
+            if (negated) {
+                text = text.substring(1);
+            }
+            boolean directoryOnly = text.endsWith("/");
+            if (directoryOnly) {
+                text = text.substring(0, text.length() - 1);
+            }
+            boolean anchored = text.contains("/");
+            if (text.startsWith("/")) {
+                text = text.substring(1);
+            }
+            if (text.isEmpty()) {
+                return null;
+            }
+            return new Rule(Pattern.compile(toRegex(text)), negated, directoryOnly, anchored);
+        }
+
+        boolean matches(String name, String relative, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            return pattern.matcher(anchored ? relative : name).matches();
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' && glob.startsWith("**", i)) {
+                    boolean slash = glob.startsWith("**/", i);
+                    sb.append(slash ? "(?:.*/)?" : ".*");
+                    i += slash ? 2 : 1;
+                } else if (c == '*') {
+                    sb.append("[^/]*");
+                } else if (c == '?') {
+                    sb.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                    int end = glob.indexOf(']', i + 2);
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!")) {
+                        set = "^" + set.substring(1);
+                    }
+                    sb.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = end;
+                } else if (c == '\\' && i + 1 < glob.length()) {
+                    sb.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                } else {
+                    sb.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
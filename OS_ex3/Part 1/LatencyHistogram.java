@@ -0,0 +1,58 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations with power-of-two buckets: bucket
+ * <code>i</code> counts durations between 2<sup>i-1</sup> and 2<sup>i</sup>
+ * nanoseconds. Percentiles are therefore accurate to within a factor of two,
+ * which is enough to tell microseconds from milliseconds from seconds.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records one duration.
+     * 
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+    }
+
+    /**
+     * Returns the total number of recorded durations.
+     * 
+     * @return the number of durations
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given percentile.
+     * 
+     * @param percentile A percentile between 0 and 100
+     * @return the percentile in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(rank, 1)) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << i;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
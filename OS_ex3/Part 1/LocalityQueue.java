@@ -0,0 +1,312 @@
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A synchronized bounded-size queue of files to copy that hands them out by
+ * locality rather than in arrival order. Pending files are grouped by their
+ * source directory, and each group is ordered by inode number, which on most
+ * file systems follows the order the files were laid out on disk. Consumers
+ * take files from the oldest group until it is empty before moving to the next
+ * one, and a batch never spans two groups.
+ * <p>
+ * Capacity, producer registration and closing behave exactly as in
+ * {@link SynchronizedQueue}.
+ */
+public class LocalityQueue implements ProducerConsumerQueue<FileEntry> {
+
+	private static final Comparator<Pending> BY_INODE = Comparator.comparingLong((Pending pending) -> pending.inode)
+			.thenComparingLong(pending -> pending.sequence);
+
+	private final int capacity;
+	private final Map<Object, PriorityQueue<Pending>> groups = new LinkedHashMap<>();
+	private final Object lock = new Object();
+	private final QueueMetrics metrics;
+	private int size;
+	private int producers;
+	private long sequence;
+	private boolean closed;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param capacity Maximal number of pending files
+	 * @param name     Queue name, used in metrics
+	 */
+	public LocalityQueue(int capacity, String name) {
+		this.capacity = capacity;
+		this.metrics = new QueueMetrics(name);
+	}
+
+	/**
+	 * Dequeues the next file of the current group, blocking while the queue is
+	 * empty and producers are still registered.
+	 * 
+	 * @return The next file, or null if there are no more files
+	 */
+	@Override
+	public FileEntry dequeue() {
+		synchronized (lock) {
+			if (!awaitNotEmpty(false, 0)) {
+				return null;
+			}
+			FileEntry file = take();
+			metrics.dequeued(1);
+			lock.notifyAll();
+			return file;
+		}
+	}
+
+	@Override
+	public FileEntry poll(long timeout, TimeUnit unit) {
+		synchronized (lock) {
+			if (!awaitNotEmpty(true, unit.toNanos(timeout))) {
+				return null;
+			}
+			FileEntry file = take();
+			metrics.dequeued(1);
+			lock.notifyAll();
+			return file;
+		}
+	}
+
+	@Override
+	public void enqueue(FileEntry item) {
+		// The first call may read the file's attributes, which is done before
+		// taking the lock
+		item.inode();
+		synchronized (lock) {
+			if (!awaitNotFull()) {
+				return;
+			}
+			add(item);
+			metrics.enqueued(1, size);
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public boolean offer(FileEntry item) {
+		item.inode();
+		synchronized (lock) {
+			if (size == capacity || closed) {
+				return false;
+			}
+			add(item);
+			metrics.enqueued(1, size);
+			lock.notifyAll();
+			return true;
+		}
+	}
+
+	/**
+	 * Enqueues all files of the given collection, as many as fit each time the
+	 * lock is held.
+	 * 
+	 * @param items Files to enqueue
+	 */
+	@Override
+	public void enqueueAll(Collection<? extends FileEntry> items) {
+		for (FileEntry item : items) {
+			item.inode();
+		}
+		Iterator<? extends FileEntry> pending = items.iterator();
+		synchronized (lock) {
+			while (pending.hasNext()) {
+				if (!awaitNotFull()) {
+					return;
+				}
+				int count = 0;
+				while (size < capacity && pending.hasNext()) {
+					add(pending.next());
+					count++;
+				}
+				metrics.enqueued(count, size);
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Dequeues up to <code>max</code> files, all from the current group.
+	 * 
+	 * @param target Collection to transfer the files into
+	 * @param max    Maximal number of files to transfer
+	 * @return The number of files transferred, or 0 if there are no more files
+	 */
+	@Override
+	public int drainTo(Collection<? super FileEntry> target, int max) {
+		synchronized (lock) {
+			if (!awaitNotEmpty(false, 0) || max <= 0) {
+				return 0;
+			}
+			Iterator<PriorityQueue<Pending>> iterator = groups.values().iterator();
+			PriorityQueue<Pending> group = iterator.next();
+			int count = 0;
+			while (count < max && !group.isEmpty()) {
+				target.add(group.poll().file);
+				count++;
+			}
+			if (group.isEmpty()) {
+				iterator.remove();
+			}
+			size -= count;
+			metrics.dequeued(count);
+			lock.notifyAll();
+			return count;
+		}
+	}
+
+	/**
+	 * Closes the queue and wakes every waiting producer and consumer.
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		synchronized (lock) {
+			return closed;
+		}
+	}
+
+	private boolean awaitNotEmpty(boolean timed, long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (size == 0 && producers > 0 && !closed) {
+			long remaining = timed ? deadline - System.nanoTime() : 0;
+			if (timed && remaining <= 0) {
+				break;
+			}
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileEmpty();
+			}
+			try {
+				if (timed) {
+					TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+				} else {
+					lock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (blocked) {
+			metrics.blockedWhileEmpty(blockedSince);
+		}
+		return size > 0 && !closed;
+	}
+
+	private boolean awaitNotFull() {
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (size == capacity && !closed) {
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileFull();
+			}
+			try {
+				lock.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (blocked) {
+			metrics.blockedWhileFull(blockedSince);
+		}
+		return size < capacity && !closed;
+	}
+
+	private void add(FileEntry file) {
+		Path parent = file.getPath().getParent();
+		Object key = parent == null ? "" : parent;
+		groups.computeIfAbsent(key, k -> new PriorityQueue<>(BY_INODE)).add(new Pending(file, sequence++));
+		size++;
+	}
+
+	private FileEntry take() {
+		Iterator<PriorityQueue<Pending>> iterator = groups.values().iterator();
+		PriorityQueue<Pending> group = iterator.next();
+		FileEntry file = group.poll().file;
+		if (group.isEmpty()) {
+			iterator.remove();
+		}
+		size--;
+		return file;
+	}
+
+	@Override
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public int getSize() {
+		synchronized (lock) {
+			return size;
+		}
+	}
+
+	@Override
+	public void registerProducer() {
+		synchronized (lock) {
+			producers++;
+		}
+	}
+
+	@Override
+	public void unregisterProducer() {
+		synchronized (lock) {
+			producers--;
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		synchronized (lock) {
+			return size == 0;
+		}
+	}
+
+	@Override
+	public int getProducers() {
+		synchronized (lock) {
+			return producers;
+		}
+	}
+
+	@Override
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * A pending file with the keys it is ordered by within its group.
+	 */
+	private static class Pending {
+		private final FileEntry file;
+		private final long inode;
+		private final long sequence;
+
+		Pending(FileEntry file, long sequence) {
+			this.file = file;
+			this.inode = Math.max(file.inode(), 0);
+			this.sequence = sequence;
+		}
+	}
+}
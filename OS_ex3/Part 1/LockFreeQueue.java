@@ -0,0 +1,363 @@
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free bounded multi-producer/multi-consumer queue. The buffer is a
+ * power-of-two array where every slot carries a sequence number that tells
+ * producers and consumers whether the slot is ready for them, so no monitor is
+ * taken on the fast path.
+ * Threads that find the queue full (producers) or empty (consumers) spin for a
+ * short while and then park until they are woken by the other side.
+ * The producer registration contract is the same as in
+ * {@link SynchronizedQueue}.
+ * 
+ * @param <T> Type of data items
+ */
+public class LockFreeQueue<T> implements ProducerConsumerQueue<T> {
+
+	public static final int SPIN_TRIES = 100;
+
+	private final AtomicReferenceArray<T> buffer;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong enqueuePosition = new AtomicLong();
+	private final AtomicLong dequeuePosition = new AtomicLong();
+	private final AtomicInteger producers = new AtomicInteger();
+	private final ConcurrentLinkedQueue<Thread> waitingConsumers = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+	private final QueueMetrics metrics;
+	private volatile boolean closed;
+
+	/**
+	 * Constructor. Allocates a buffer with the given capacity rounded up to the
+	 * next power of two.
+	 * 
+	 * @param capacity Minimal buffer capacity
+	 */
+	public LockFreeQueue(int capacity) {
+		this(capacity, "queue");
+	}
+
+	/**
+	 * Constructor. Allocates a buffer with the given capacity rounded up to the
+	 * next power of two.
+	 * 
+	 * @param capacity Minimal buffer capacity
+	 * @param name     Queue name, used in metrics
+	 */
+	public LockFreeQueue(int capacity, String name) {
+		this.metrics = new QueueMetrics(name);
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.buffer = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Dequeues the first item from the queue and returns it.
+	 * If the queue is empty but producers are still registered to this queue,
+	 * this method spins and then parks until some item is available.
+	 * If the queue is empty and no producers are registered, this method returns
+	 * null.
+	 * 
+	 * @return The first item, or null if there are no more items
+	 */
+	@Override
+	public T dequeue() {
+		return take(false, 0);
+	}
+
+	/**
+	 * Dequeues the first item from the queue, spinning and then parking at most
+	 * the given time for one to become available.
+	 * 
+	 * @param timeout How long to wait
+	 * @param unit    The unit of the timeout
+	 * @return The first item, or null if there was none in time or there are
+	 *         no more items
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) {
+		return take(true, unit.toNanos(timeout));
+	}
+
+	private T take(boolean timed, long nanos) {
+		long deadline = timed ? System.nanoTime() + nanos : 0;
+		int spins = 0;
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (true) {
+			T item = closed ? null : tryDequeue();
+			if (item != null || producers.get() == 0 || closed) {
+				if (item == null && !closed) {
+					// Everything enqueued before the last producer left is visible now
+					item = tryDequeue();
+				}
+				if (blocked) {
+					metrics.blockedWhileEmpty(blockedSince);
+				}
+				return item;
+			}
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileEmpty();
+			}
+			long remaining = timed ? deadline - System.nanoTime() : 1;
+			if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+				metrics.blockedWhileEmpty(blockedSince);
+				return null;
+			}
+			if (spins < SPIN_TRIES) {
+				spins++;
+				Thread.onSpinWait();
+				continue;
+			}
+			Thread current = Thread.currentThread();
+			waitingConsumers.add(current);
+			if (isEmpty() && producers.get() > 0 && !closed) {
+				if (timed) {
+					LockSupport.parkNanos(this, remaining);
+				} else {
+					LockSupport.park(this);
+				}
+			}
+			waitingConsumers.remove(current);
+		}
+	}
+
+	/**
+	 * Enqueues an item to the end of this queue. If the queue is full, this
+	 * method spins and then parks until some space becomes available.
+	 * 
+	 * @param item Item to enqueue
+	 */
+	@Override
+	public void enqueue(T item) {
+		if (item == null) {
+			throw new NullPointerException("Null items are not supported");
+		}
+		int spins = 0;
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (!closed && !tryEnqueue(item)) {
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileFull();
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			if (spins < SPIN_TRIES) {
+				spins++;
+				Thread.onSpinWait();
+				continue;
+			}
+			Thread current = Thread.currentThread();
+			waitingProducers.add(current);
+			if (getSize() >= getCapacity() && !closed) {
+				LockSupport.park(this);
+			}
+			waitingProducers.remove(current);
+		}
+		if (blocked) {
+			metrics.blockedWhileFull(blockedSince);
+		}
+	}
+
+	/**
+	 * Enqueues an item if a slot is free, without spinning or parking.
+	 * 
+	 * @param item Item to enqueue
+	 * @return true if the item was enqueued
+	 */
+	@Override
+	public boolean offer(T item) {
+		if (item == null) {
+			throw new NullPointerException("Null items are not supported");
+		}
+		return !closed && tryEnqueue(item);
+	}
+
+	/**
+	 * Enqueues all items of the given collection, in iteration order. Items from
+	 * one call may interleave with items of concurrent producers.
+	 * 
+	 * @param items Items to enqueue
+	 */
+	@Override
+	public void enqueueAll(Collection<? extends T> items) {
+		for (T item : items) {
+			if (closed || Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			enqueue(item);
+		}
+	}
+
+	/**
+	 * Dequeues up to <code>max</code> items. Blocks like {@link #dequeue()} for
+	 * the first item and then takes only the items that are already available.
+	 * 
+	 * @param target Collection to transfer the items into
+	 * @param max    Maximal number of items to transfer
+	 * @return The number of items transferred, or 0 if there are no more items
+	 */
+	@Override
+	public int drainTo(Collection<? super T> target, int max) {
+		if (max <= 0) {
+			return 0;
+		}
+		T item = dequeue();
+		int count = 0;
+		while (item != null) {
+			target.add(item);
+			if (++count == max) {
+				break;
+			}
+			item = closed ? null : tryDequeue();
+		}
+		return count;
+	}
+
+	private boolean tryEnqueue(T item) {
+		long position = enqueuePosition.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (enqueuePosition.compareAndSet(position, position + 1)) {
+					buffer.set(index, item);
+					sequences.set(index, position + 1);
+					metrics.enqueued(1, getSize());
+					wakeUp(waitingConsumers);
+					return true;
+				}
+				position = enqueuePosition.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = enqueuePosition.get();
+			}
+		}
+	}
+
+	private T tryDequeue() {
+		long position = dequeuePosition.get();
+		while (true) {
+			int index = (int) (position & mask);
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (dequeuePosition.compareAndSet(position, position + 1)) {
+					T item = buffer.get(index);
+					buffer.set(index, null);
+					sequences.set(index, position + mask + 1);
+					metrics.dequeued(1);
+					wakeUp(waitingProducers);
+					return item;
+				}
+				position = dequeuePosition.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = dequeuePosition.get();
+			}
+		}
+	}
+
+	private static void wakeUp(ConcurrentLinkedQueue<Thread> waiters) {
+		Thread waiter = waiters.poll();
+		if (waiter != null) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	private static void wakeUpAll(ConcurrentLinkedQueue<Thread> waiters) {
+		Thread waiter;
+		while ((waiter = waiters.poll()) != null) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+	/**
+	 * Returns the capacity of this queue, which is always a power of two.
+	 * 
+	 * @return queue capacity
+	 */
+	@Override
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the current size of the queue. The value is a snapshot and may be
+	 * stale by the time it is returned.
+	 * 
+	 * @return queue size
+	 */
+	@Override
+	public int getSize() {
+		long size = enqueuePosition.get() - dequeuePosition.get();
+		return (int) Math.max(0, Math.min(size, getCapacity()));
+	}
+
+	@Override
+	public void registerProducer() {
+		producers.incrementAndGet();
+	}
+
+	/**
+	 * Unregisters a producer from this queue. When the last producer leaves, all
+	 * parked consumers are woken so they can drain the queue and finish.
+	 */
+	@Override
+	public void unregisterProducer() {
+		if (producers.decrementAndGet() == 0) {
+			wakeUpAll(waitingConsumers);
+		}
+	}
+
+	/**
+	 * Closes the queue and unparks every waiting producer and consumer.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		wakeUpAll(waitingConsumers);
+		wakeUpAll(waitingProducers);
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return getSize() == 0;
+	}
+
+	@Override
+	public int getProducers() {
+		return producers.get();
+	}
+
+	@Override
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
+}
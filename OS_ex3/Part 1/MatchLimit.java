@@ -0,0 +1,58 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The number of matches a search stops after, shared by all searchers. Each
+ * searcher claims its matches before it enqueues them and enqueues only the
+ * ones it was granted, so exactly the first matches up to the limit reach the
+ * results queue however many searchers race for them.
+ */
+public class MatchLimit {
+
+    /**
+     * A limit that is never reached.
+     */
+    public static final MatchLimit NONE = new MatchLimit(Long.MAX_VALUE);
+
+    private final long max;
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param max The number of matches to stop after
+     */
+    public MatchLimit(long max) {
+        this.max = max;
+    }
+
+    /**
+     * Claims matches.
+     *
+     * @param count The number of matches found
+     * @return how many of them may be kept, from 0 to <code>count</code>
+     */
+    public int claim(int count) {
+        if (this == NONE) {
+            return count;
+        }
+        while (true) {
+            long current = claimed.get();
+            int granted = (int) Math.min(count, max - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (claimed.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    /**
+     * Checks whether all the matches were claimed.
+     *
+     * @return true if no more matches may be kept
+     */
+    public boolean isReached() {
+        return this != NONE && claimed.get() >= max;
+    }
+}
@@ -0,0 +1,104 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the names of copies in a destination directory, shared by all the
+ * copiers of a run. The names already in the directory are listed once, when
+ * the registry is created; after that a name is reserved in memory, without
+ * touching the file system. When a name is taken, the copy is named
+ * <code>base(n).ext</code> with the next suffix for that name, so reserving a
+ * name costs a constant number of map operations however many files share it.
+ * <p>
+ * On a destination that ignores case, as usual on Windows and macOS, names
+ * that differ only in case are the same file, and a copy moved over one of
+ * them would replace the other; the registry then compares names ignoring
+ * case. Whether the destination does is found out by creating a file in it.
+ */
+public class NameRegistry {
+
+    private final Set<String> taken = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, AtomicInteger> suffixes = new ConcurrentHashMap<>();
+    private final boolean ignoreCase;
+
+    /**
+     * Constructor. Lists the names already in the destination directory.
+     * 
+     * @param destination The destination directory
+     */
+    public NameRegistry(File destination) {
+        ignoreCase = ignoresCase(destination.toPath());
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(destination.toPath())) {
+            for (Path entry : entries) {
+                taken.add(key(entry.getFileName().toString()));
+            }
+        } catch (IOException e) {
+            // A missing or unreadable destination has no names to avoid
+        }
+    }
+
+    /**
+     * Reserves a name for a copy of a file named <code>name</code>. The name is
+     * returned as is if it is free, and with a suffix otherwise. A name without
+     * an extension, or starting with its only dot, gets its suffix at the end.
+     * 
+     * @param name The name of the file to copy
+     * @return A name no other copy in the destination has
+     */
+    public String reserve(String name) {
+        if (taken.add(key(name))) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        AtomicInteger suffix = suffixes.computeIfAbsent(key(name), key -> new AtomicInteger());
+        String candidate;
+        do {
+            candidate = base + "(" + suffix.incrementAndGet() + ")" + extension;
+        } while (!taken.add(key(candidate)));
+        return candidate;
+    }
+
+    /**
+     * Marks a name as taken, for copies whose name was not handed out by this
+     * registry, such as those kept from a previous run.
+     * 
+     * @param name The name of the copy
+     */
+    public void claim(String name) {
+        taken.add(key(name));
+    }
+
+    private String key(String name) {
+        return ignoreCase ? name.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT) : name;
+    }
+
+    // A lower-case name is looked up in upper case
+    private static boolean ignoresCase(Path directory) {
+        Path probe = null;
+        try {
+            probe = Files.createTempFile(directory, "case", ".probe");
+            String name = probe.getFileName().toString();
+            return Files.exists(directory.resolve(name.toUpperCase(Locale.ROOT)));
+        } catch (IOException e) {
+            // Nothing can be copied there either
+            return false;
+        } finally {
+            if (probe != null) {
+                try {
+                    Files.deleteIfExists(probe);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A parallel version of {@link Scouter}. Lists directories under the root
+ * directory with several threads of a {@link ForkJoinPool}: every directory is a
+ * task that reads and enqueues the directory listing and forks one task per
+ * subdirectory, so idle threads steal subtrees from busy ones. Tasks are
+ * forked rather than called recursively, so the depth of the tree does not
+ * grow the thread stacks.
+ * The scouter registers to the directory queue as a single producer for the
+ * whole traversal and unregisters once every task has completed.
+ */
+public class ParallelScouter implements Runnable {
+
+    private final ProducerConsumerQueue<DirectoryListing> directoryQueue;
+    private final File root;
+    private final int parallelism;
+    private final PruningRules pruning;
+    private final SearchIndex index;
+    private final PipelineMetrics metrics;
+
+    /**
+     * Initializes a new instance of the ParallelScouter class.
+     * 
+     * @param directoryQueue the directory queue to add the directories to
+     * @param root           the root directory to start the search from
+     * @param parallelism    the number of threads listing directories
+     */
+    public ParallelScouter(ProducerConsumerQueue<DirectoryListing> directoryQueue, File root, int parallelism) {
+        this(directoryQueue, root, parallelism, PruningRules.NONE, null, new PipelineMetrics());
+    }
+
+    /**
+     * Initializes a new instance of the ParallelScouter class that prunes the
+     * tree with the given rules, serves unchanged directories from the index of
+     * a previous run and records its work in the run's metrics.
+     * 
+     * @param directoryQueue the directory queue to add the directories to
+     * @param root           the root directory to start the search from
+     * @param parallelism    the number of threads listing directories
+     * @param pruning        the rules deciding which entries to leave out
+     * @param index          the index of the previous run, or null to list every
+     *                       directory
+     * @param metrics        the metrics of the run
+     */
+    public ParallelScouter(ProducerConsumerQueue<DirectoryListing> directoryQueue, File root, int parallelism,
+            PruningRules pruning, SearchIndex index, PipelineMetrics metrics) {
+        this.directoryQueue = directoryQueue;
+        this.root = root;
+        this.parallelism = parallelism;
+        this.pruning = pruning;
+        this.index = index;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Lists the whole tree and waits until every directory has been enqueued.
+     */
+    @Override
+    public void run() {
+        directoryQueue.registerProducer();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            FileEntry rootEntry = DirectoryListing.directoryEntry(root.toPath());
+            if (rootEntry != null) {
+                pool.invoke(new ScoutTask(null, rootEntry, rootEntry, 0, null));
+            }
+        } finally {
+            pool.shutdown();
+            directoryQueue.unregisterProducer();
+        }
+    }
+
+    private class ScoutTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileEntry root;
+        private final FileEntry directory;
+        private final int depth;
+        private final IgnoreRules inherited;
+
+        ScoutTask(ScoutTask parent, FileEntry root, FileEntry directory, int depth, IgnoreRules inherited) {
+            super(parent);
+            this.root = root;
+            this.directory = directory;
+            this.depth = depth;
+            this.inherited = inherited;
+        }
+
+        @Override
+        public void compute() {
+            if (directoryQueue.isClosed()) {
+                // The search was cancelled or has all the matches it wants
+                tryComplete();
+                return;
+            }
+            DirectoryScannedEvent event = new DirectoryScannedEvent();
+            event.begin();
+            DirectoryListing listing = index == null ? null : index.cachedListing(directory);
+            if (listing == null) {
+                listing = DirectoryListing.read(directory);
+            }
+            if (index != null) {
+                index.recordDirectory(listing);
+            }
+            metrics.directoryScanned(listing, event);
+            IgnoreRules ignore = pruning.ignoreRules(listing, inherited);
+            listing = pruning.apply(listing, root, depth, ignore);
+            directoryQueue.enqueue(listing);
+            List<FileEntry> subdirectories = listing.getSubdirectories();
+            for (FileEntry subdirectory : subdirectories) {
+                addToPendingCount(1);
+                new ScoutTask(this, root, subdirectory, depth + 1, ignore).fork();
+            }
+            tryComplete();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by all stages of one run: directories scanned by the
+ * scouters, files searched and matched by the searchers, and files and bytes
+ * copied by the copiers, with a histogram of copy latencies. Together with the
+ * {@link QueueMetrics} of the two queues they show which stage bounds a run.
+ * Scans and copies are also recorded as JFR events when JFR is on.
+ */
+public class PipelineMetrics {
+
+    private final long startNanos = System.nanoTime();
+    private final LongAdder directoriesScanned = new LongAdder();
+    private final LongAdder filesSearched = new LongAdder();
+    private final LongAdder filesMatched = new LongAdder();
+    private final LongAdder filesCopied = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+    private final LongAdder copyFailures = new LongAdder();
+    private final LongAdder filesDeduplicated = new LongAdder();
+    private final LongAdder bytesDeduplicated = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+    private final LongAdder bytesSkipped = new LongAdder();
+    private final LongAdder filesListed = new LongAdder();
+    private final LatencyHistogram copyLatency = new LatencyHistogram();
+
+    /**
+     * Records a directory listed by a scouter.
+     * 
+     * @param listing The listing of the directory
+     * @param event   The event begun before the directory was listed
+     */
+    public void directoryScanned(DirectoryListing listing, DirectoryScannedEvent event) {
+        directoriesScanned.increment();
+        if (event.shouldCommit()) {
+            event.directory = listing.getDirectory().toString();
+            event.files = listing.getFiles().size();
+            event.subdirectories = listing.getSubdirectories().size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a directory searched by a searcher.
+     * 
+     * @param files   The number of files in the directory
+     * @param matches The number of files that matched
+     */
+    public void directorySearched(int files, int matches) {
+        filesSearched.add(files);
+        filesMatched.add(matches);
+    }
+
+    /**
+     * Records a file copied by a copier.
+     * 
+     * @param file       The copied file
+     * @param startNanos The {@link System#nanoTime()} at which the copy started
+     * @param event      The event begun before the copy started
+     */
+    public void fileCopied(FileEntry file, long startNanos, FileCopiedEvent event) {
+        copyLatency.record(System.nanoTime() - startNanos);
+        filesCopied.increment();
+        bytesCopied.add(file.size());
+        if (event.shouldCommit()) {
+            event.source = file.toString();
+            event.size = file.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a file a copier failed to copy.
+     */
+    public void copyFailed() {
+        copyFailures.increment();
+    }
+
+    /**
+     * Records a file skipped or hard-linked because its contents were already
+     * copied.
+     * 
+     * @param file The duplicate file
+     */
+    public void fileDeduplicated(FileEntry file) {
+        filesDeduplicated.increment();
+        bytesDeduplicated.add(file.size());
+    }
+
+    /**
+     * Records a file not copied because the index or the journal shows its
+     * copy from a previous run is still in the destination directory.
+     * 
+     * @param file The skipped file
+     */
+    public void fileSkipped(FileEntry file) {
+        filesSkipped.increment();
+        bytesSkipped.add(file.size());
+    }
+
+    /**
+     * Records files printed instead of copied.
+     * 
+     * @param count The number of files printed
+     */
+    public void filesListed(int count) {
+        filesListed.add(count);
+    }
+
+    public long getFilesListed() {
+        return filesListed.sum();
+    }
+
+    public long getDirectoriesScanned() {
+        return directoriesScanned.sum();
+    }
+
+    public long getFilesSearched() {
+        return filesSearched.sum();
+    }
+
+    public long getFilesMatched() {
+        return filesMatched.sum();
+    }
+
+    public long getFilesCopied() {
+        return filesCopied.sum();
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied.sum();
+    }
+
+    public long getFilesDeduplicated() {
+        return filesDeduplicated.sum();
+    }
+
+    public long getBytesDeduplicated() {
+        return bytesDeduplicated.sum();
+    }
+
+    public long getFilesSkipped() {
+        return filesSkipped.sum();
+    }
+
+    public long getBytesSkipped() {
+        return bytesSkipped.sum();
+    }
+
+    public long getCopyFailures() {
+        return copyFailures.sum();
+    }
+
+    public LatencyHistogram getCopyLatency() {
+        return copyLatency;
+    }
+
+    /**
+     * Returns a one-line snapshot of the run's progress.
+     * 
+     * @param queues The pipeline queues whose occupancy to show
+     * @return the progress line
+     */
+    public String progressLine(ProducerConsumerQueue<?>... queues) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[%6.1fs] dirs %d, files %d, matched %d, copied %d (%.1f MB)", elapsedSeconds(),
+                getDirectoriesScanned(), getFilesSearched(), getFilesMatched(), getFilesCopied(),
+                getBytesCopied() / 1e6));
+        for (ProducerConsumerQueue<?> queue : queues) {
+            sb.append(String.format(", %s %d/%d", queue.getMetrics().getName(), queue.getSize(),
+                    queue.getCapacity()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a multi-line report of the whole run.
+     * 
+     * @param queues The pipeline queues to report on
+     * @return the report
+     */
+    public String summary(ProducerConsumerQueue<?>... queues) {
+        double seconds = elapsedSeconds();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Finished in %.1fs%n", seconds));
+        sb.append(String.format("  scouters:  %d directories (%.0f/s)%n", getDirectoriesScanned(),
+                getDirectoriesScanned() / seconds));
+        sb.append(String.format("  searchers: %d files searched, %d matched%n", getFilesSearched(),
+                getFilesMatched()));
+        if (getFilesListed() > 0) {
+            sb.append(String.format("  printer:   %d files%n", getFilesListed()));
+        }
+        sb.append(String.format("  copiers:   %d files, %.1f MB (%.1f MB/s), %d failed%n", getFilesCopied(),
+                getBytesCopied() / 1e6, getBytesCopied() / 1e6 / seconds, getCopyFailures()));
+        if (getFilesDeduplicated() > 0) {
+            sb.append(String.format("  dedup:     %d duplicates, %.1f MB not copied%n", getFilesDeduplicated(),
+                    getBytesDeduplicated() / 1e6));
+        }
+        if (getFilesSkipped() > 0) {
+            sb.append(String.format("  skipped:   %d files, %.1f MB already copied by a previous run%n",
+                    getFilesSkipped(), getBytesSkipped() / 1e6));
+        }
+        sb.append(String.format("  copy latency: p50 %s, p90 %s, p99 %s, max %s%n",
+                formatNanos(copyLatency.percentile(50)), formatNanos(copyLatency.percentile(90)),
+                formatNanos(copyLatency.percentile(99)), formatNanos(copyLatency.percentile(100))));
+        for (ProducerConsumerQueue<?> queue : queues) {
+            QueueMetrics metrics = queue.getMetrics();
+            sb.append(String.format(
+                    "  %s queue: %d in, %d out, high-water %d/%d, blocked full %s, blocked empty %s%n",
+                    metrics.getName(), metrics.getEnqueued(), metrics.getDequeued(), metrics.getHighWaterMark(),
+                    queue.getCapacity(), formatNanos(metrics.getBlockedFullNanos()),
+                    formatNanos(metrics.getBlockedEmptyNanos())));
+        }
+        return sb.toString();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + "ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%.1fs", nanos / 1e9);
+    }
+}
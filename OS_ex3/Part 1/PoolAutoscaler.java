@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Adjusts the number of searchers and copiers while a search runs. Every
+ * sampling interval it looks at the occupancy of the directory and results
+ * queues and at how long their producers waited for space and their consumers
+ * waited for items since the last sample, waits still going on included:
+ * <ul>
+ * <li>a queue that is filling up, or whose producers are waiting, gets another
+ * consumer, up to the configured maximum;</li>
+ * <li>an empty queue whose consumers spent most of the interval waiting loses a
+ * consumer, down to the configured minimum.</li>
+ * </ul>
+ * Retired workers finish the item they hold and leave; a retired searcher still
+ * unregisters from the results queue. The autoscaler itself is registered as a
+ * producer of the results queue for as long as it may start searchers, so the
+ * copiers cannot see a moment without producers while a searcher it started
+ * has not registered yet.
+ */
+public class PoolAutoscaler implements Runnable {
+
+    public static final long DEFAULT_INTERVAL_MILLIS = 200;
+
+    private static final double GROW_OCCUPANCY = 0.75;
+    private static final double SHRINK_IDLE_SHARE = 0.5;
+
+    private final ExecutorService executor;
+    private final ProducerConsumerQueue<DirectoryListing> directoryQueue;
+    private final ProducerConsumerQueue<FileEntry> resultsQueue;
+    private final Supplier<Searcher> searcherFactory;
+    private final Supplier<Copier> copierFactory;
+    private final Pool<Searcher> searchers;
+    private final Pool<Copier> copiers;
+    private final long intervalMillis;
+
+    /**
+     * Constructor.
+     * 
+     * @param executor        The executor the workers run on
+     * @param directoryQueue  The queue the searchers consume
+     * @param resultsQueue    The queue the copiers consume
+     * @param searcherFactory Creates a new searcher
+     * @param copierFactory   Creates a new copier
+     * @param searcherBounds  Initial, minimal and maximal number of searchers
+     * @param copierBounds    Initial, minimal and maximal number of copiers
+     * @param intervalMillis  Sampling interval in milliseconds
+     */
+    public PoolAutoscaler(ExecutorService executor, ProducerConsumerQueue<DirectoryListing> directoryQueue,
+            ProducerConsumerQueue<FileEntry> resultsQueue, Supplier<Searcher> searcherFactory,
+            Supplier<Copier> copierFactory, int[] searcherBounds, int[] copierBounds, long intervalMillis) {
+        this.executor = executor;
+        this.directoryQueue = directoryQueue;
+        this.resultsQueue = resultsQueue;
+        this.searcherFactory = searcherFactory;
+        this.copierFactory = copierFactory;
+        this.searchers = new Pool<>(searcherBounds, Searcher::retire);
+        this.copiers = new Pool<>(copierBounds, Copier::retire);
+        this.intervalMillis = intervalMillis;
+        resultsQueue.registerProducer();
+    }
+
+    /**
+     * Starts the initial workers, adjusts the pools until the search is over and
+     * waits for every worker it started.
+     */
+    @Override
+    public void run() {
+        boolean searching = true;
+        try {
+            for (int i = 0; i < searchers.initial; i++) {
+                searchers.add(executor, searcherFactory.get());
+            }
+            for (int i = 0; i < copiers.initial; i++) {
+                copiers.add(executor, copierFactory.get());
+            }
+            Sample directories = new Sample(directoryQueue);
+            Sample results = new Sample(resultsQueue);
+            while (searching || !resultsQueue.isClosed()
+                    && (resultsQueue.getProducers() > 0 || !resultsQueue.isEmpty())) {
+                Thread.sleep(intervalMillis);
+                if (searching && directoryQueue.getProducers() == 0
+                        && (directoryQueue.isEmpty() || directoryQueue.isClosed())) {
+                    // No more directories: no searcher will ever be needed again
+                    searching = false;
+                    resultsQueue.unregisterProducer();
+                }
+                if (searching) {
+                    adjust(searchers, directories.next(), searcherFactory);
+                }
+                if (!resultsQueue.isClosed()) {
+                    adjust(copiers, results.next(), copierFactory);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (searching) {
+                resultsQueue.unregisterProducer();
+            }
+        }
+        searchers.await();
+        copiers.await();
+    }
+
+    private <W extends Runnable> void adjust(Pool<W> pool, Sample sample, Supplier<W> factory) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        if ((sample.occupancy >= GROW_OCCUPANCY || sample.blockedFullNanos > intervalNanos / 10)
+                && pool.active.size() < pool.max) {
+            pool.add(executor, factory.get());
+        } else if (sample.occupancy == 0
+                && sample.blockedEmptyNanos > pool.active.size() * intervalNanos * SHRINK_IDLE_SHARE
+                && pool.active.size() > pool.min) {
+            pool.retireOne();
+        }
+    }
+
+    /**
+     * The change in a queue's counters since the previous sample.
+     */
+    private static class Sample {
+        private final ProducerConsumerQueue<?> queue;
+        private long lastBlockedFull;
+        private long lastBlockedEmpty;
+        private double occupancy;
+        private long blockedFullNanos;
+        private long blockedEmptyNanos;
+
+        Sample(ProducerConsumerQueue<?> queue) {
+            this.queue = queue;
+            this.lastBlockedFull = queue.getMetrics().getBlockedFullNanos();
+            this.lastBlockedEmpty = queue.getMetrics().getBlockedEmptyNanos();
+        }
+
+        Sample next() {
+            long blockedFull = queue.getMetrics().getBlockedFullNanos();
+            long blockedEmpty = queue.getMetrics().getBlockedEmptyNanos();
+            occupancy = (double) queue.getSize() / queue.getCapacity();
+            blockedFullNanos = blockedFull - lastBlockedFull;
+            blockedEmptyNanos = blockedEmpty - lastBlockedEmpty;
+            lastBlockedFull = blockedFull;
+            lastBlockedEmpty = blockedEmpty;
+            return this;
+        }
+    }
+
+    /**
+     * The workers of one stage: those still active, and the futures of every
+     * worker started, retired or not.
+     */
+    private static class Pool<W extends Runnable> {
+        private final int initial;
+        private final int min;
+        private final int max;
+        private final Consumer<W> retire;
+        private final List<W> active = new ArrayList<>();
+        private final List<Future<?>> started = new ArrayList<>();
+
+        Pool(int[] bounds, Consumer<W> retire) {
+            this.initial = bounds[0];
+            this.min = bounds[1];
+            this.max = bounds[2];
+            this.retire = retire;
+        }
+
+        void add(ExecutorService executor, W worker) {
+            active.add(worker);
+            started.add(executor.submit(worker));
+        }
+
+        void retireOne() {
+            retire.accept(active.remove(active.size() - 1));
+        }
+
+        void await() {
+            for (Future<?> future : started) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
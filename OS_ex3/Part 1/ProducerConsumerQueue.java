@@ -0,0 +1,138 @@
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded-size queue for multithreaded producer-consumer applications.
+ * Consumers block while the queue is empty and producers are still registered;
+ * once the queue is empty and no producer is registered, {@link #dequeue()}
+ * returns null.
+ * <p>
+ * A queue can be closed to cancel the work around it: every waiting thread
+ * wakes up, consumers get no more items and items enqueued are dropped. A
+ * thread interrupted while it waits stops waiting the same way, with its
+ * interrupt status kept, as if the queue was closed for it alone.
+ * 
+ * @param <T> Type of data items
+ */
+public interface ProducerConsumerQueue<T> {
+
+	/**
+	 * Dequeues the first item from the queue and returns it.
+	 * If the queue is empty but producers are still registered to this queue,
+	 * this method blocks until some item is available.
+	 * If the queue is empty and no more items are planned to be added to this
+	 * queue (because no producers are registered), this method returns null.
+	 * 
+	 * @return The first item, or null if there are no more items
+	 */
+	T dequeue();
+
+	/**
+	 * Enqueues an item to the end of this queue. If the queue is full, this
+	 * method blocks until some space becomes available.
+	 * 
+	 * @param item Item to enqueue
+	 */
+	void enqueue(T item);
+
+	/**
+	 * Enqueues an item to the end of this queue if there is room for it, without
+	 * blocking.
+	 * 
+	 * @param item Item to enqueue
+	 * @return true if the item was enqueued, false if the queue is full
+	 */
+	boolean offer(T item);
+
+	/**
+	 * Enqueues all items of the given collection, in iteration order. If the
+	 * queue does not have room for all of them, this method enqueues as many as
+	 * fit and blocks until more space becomes available.
+	 * 
+	 * @param items Items to enqueue
+	 */
+	void enqueueAll(Collection<? extends T> items);
+
+	/**
+	 * Dequeues up to <code>max</code> items and adds them to the given
+	 * collection. Blocks like {@link #dequeue()} while the queue is empty and
+	 * producers are still registered, then transfers whatever is available.
+	 * 
+	 * @param target Collection to transfer the items into
+	 * @param max    Maximal number of items to transfer
+	 * @return The number of items transferred, or 0 if there are no more items
+	 */
+	int drainTo(Collection<? super T> target, int max);
+
+	/**
+	 * Dequeues the first item from the queue, waiting at most the given time
+	 * for one to become available.
+	 * 
+	 * @param timeout How long to wait
+	 * @param unit    The unit of the timeout
+	 * @return The first item, or null if there was none in time or there are
+	 *         no more items
+	 */
+	T poll(long timeout, TimeUnit unit);
+
+	/**
+	 * Closes the queue and wakes every waiting producer and consumer. After
+	 * this, {@link #dequeue()} returns null, {@link #drainTo} returns 0 and
+	 * enqueued items are dropped.
+	 */
+	void close();
+
+	/**
+	 * Checks whether the queue was closed.
+	 * 
+	 * @return true if {@link #close()} was called
+	 */
+	boolean isClosed();
+
+	/**
+	 * Returns the capacity of this queue
+	 * 
+	 * @return queue capacity
+	 */
+	int getCapacity();
+
+	/**
+	 * Returns the current size of the queue (number of elements in it)
+	 * 
+	 * @return queue size
+	 */
+	int getSize();
+
+	/**
+	 * Registers a producer to this queue. Every producer of this queue must call
+	 * this method before starting to enqueue items, and must also call
+	 * {@link #unregisterProducer()} when it finishes to enqueue all items.
+	 */
+	void registerProducer();
+
+	/**
+	 * Unregisters a producer from this queue. See {@link #registerProducer()}.
+	 */
+	void unregisterProducer();
+
+	/**
+	 * Checks if the queue is empty.
+	 * 
+	 * @return true if the queue is empty, false otherwise
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Returns the number of currently registered producers.
+	 * 
+	 * @return number of producers
+	 */
+	int getProducers();
+
+	/**
+	 * Returns the counters this queue keeps about its use.
+	 * 
+	 * @return the queue metrics
+	 */
+	QueueMetrics getMetrics();
+}
@@ -0,0 +1,126 @@
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides which parts of the tree a scouter leaves out. Rules are applied to a
+ * listing before it is enqueued, so a pruned directory is neither searched nor
+ * descended into:
+ * <ul>
+ * <li>directories matching one of the exclude globs are skipped; a glob with a
+ * <code>/</code> is matched against the path relative to the root, any other
+ * against the directory name;</li>
+ * <li>directories deeper than the maximal depth are skipped, the root being at
+ * depth 0;</li>
+ * <li>optionally, directories on another device than the root are skipped;</li>
+ * <li>entries ignored by the ignore files found on the way are skipped.</li>
+ * </ul>
+ */
+public class PruningRules {
+
+    /**
+     * Rules that keep everything.
+     */
+    public static final PruningRules NONE = new PruningRules(new ArrayList<>(), Integer.MAX_VALUE, false, null);
+
+    private final List<PathMatcher> nameExcludes = new ArrayList<>();
+    private final List<PathMatcher> pathExcludes = new ArrayList<>();
+    private final int maxDepth;
+    private final boolean sameFileSystem;
+    private final String ignoreFileName;
+
+    /**
+     * Constructor.
+     *
+     * @param excludes       Globs of directories to skip
+     * @param maxDepth       Maximal depth of a directory below the root
+     * @param sameFileSystem Whether to skip directories on another device than
+     *                       the root
+     * @param ignoreFileName Name of the ignore files to honor, or null
+     */
+    public PruningRules(List<String> excludes, int maxDepth, boolean sameFileSystem, String ignoreFileName) {
+        for (String exclude : excludes) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + exclude);
+            (exclude.contains("/") ? pathExcludes : nameExcludes).add(matcher);
+        }
+        this.maxDepth = maxDepth;
+        this.sameFileSystem = sameFileSystem;
+        this.ignoreFileName = ignoreFileName;
+    }
+
+    /**
+     * Returns the ignore rules that apply below a directory: the inherited ones,
+     * combined with the directory's own ignore file if it has one.
+     *
+     * @param listing The listing of the directory
+     * @param parent  The rules inherited from the directories above, or null
+     * @return the rules, or null if there are none
+     */
+    public IgnoreRules ignoreRules(DirectoryListing listing, IgnoreRules parent) {
+        if (ignoreFileName != null) {
+            for (FileEntry file : listing.getFiles()) {
+                if (file.getName().equals(ignoreFileName)) {
+                    return IgnoreRules.read(parent, file.getPath());
+                }
+            }
+        }
+        return parent;
+    }
+
+    /**
+     * Removes the pruned entries from a listing.
+     *
+     * @param listing The listing of a directory
+     * @param root    The root of the search
+     * @param depth   The depth of the directory below the root
+     * @param ignore  The ignore rules that apply in the directory, or null
+     * @return the listing without the pruned entries; the listing itself if
+     *         nothing is pruned
+     */
+    public DirectoryListing apply(DirectoryListing listing, FileEntry root, int depth, IgnoreRules ignore) {
+        if (this == NONE) {
+            return listing;
+        }
+        List<FileEntry> subdirectories = new ArrayList<>();
+        if (depth < maxDepth) {
+            for (FileEntry subdirectory : listing.getSubdirectories()) {
+                if (!isExcluded(subdirectory, root) && (ignore == null || !ignore.isIgnored(subdirectory, true))) {
+                    subdirectories.add(subdirectory);
+                }
+            }
+        }
+        List<FileEntry> files = listing.getFiles();
+        if (ignore != null) {
+            files = new ArrayList<>();
+            for (FileEntry file : listing.getFiles()) {
+                if (!ignore.isIgnored(file, false)) {
+                    files.add(file);
+                }
+            }
+        }
+        return new DirectoryListing(listing.getDirectory(), subdirectories, files);
+    }
+
+    private boolean isExcluded(FileEntry directory, FileEntry root) {
+        if (sameFileSystem && root.device() != -1 && directory.device() != root.device()) {
+            return true;
+        }
+        Path name = directory.getPath().getFileName();
+        for (PathMatcher matcher : nameExcludes) {
+            if (matcher.matches(name)) {
+                return true;
+            }
+        }
+        if (!pathExcludes.isEmpty()) {
+            Path relative = root.getPath().relativize(directory.getPath());
+            for (PathMatcher matcher : pathExcludes) {
+                if (matcher.matches(relative)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event recorded every time a thread had to wait on a pipeline queue.
+ */
+@Name("DiskSearcher.QueueBlocked")
+@Label("Queue Blocked")
+@Category("DiskSearcher")
+@Description("A thread waited for a full or empty pipeline queue")
+public class QueueBlockedEvent extends jdk.jfr.Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Full")
+    @Description("True if a producer waited for space, false if a consumer waited for items")
+    boolean full;
+
+    @Label("Blocked Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long blockedTime;
+}
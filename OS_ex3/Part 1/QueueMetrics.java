@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters kept by a pipeline queue: how many items went through it, how long
+ * producers waited for space and consumers waited for items, and the largest
+ * number of items it held. Updates are lock-free and cheap; waiting time is
+ * only measured when a thread actually waits, under a lock of its own, and
+ * every wait is also recorded as a {@link QueueBlockedEvent} when JFR is on.
+ * The waiting times include the waits still going on, so a thread that waits
+ * for a long time counts from the moment it starts, not only once it is done.
+ */
+public class QueueMetrics {
+
+    private final String name;
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dequeued = new LongAdder();
+    private final Waits blockedFull = new Waits();
+    private final Waits blockedEmpty = new Waits();
+    private final LongAccumulator highWaterMark = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor.
+     * 
+     * @param name The name of the queue, used in reports and events
+     */
+    public QueueMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records items added to the queue.
+     * 
+     * @param count     The number of items added
+     * @param sizeAfter The size of the queue after adding them
+     */
+    public void enqueued(int count, int sizeAfter) {
+        enqueued.add(count);
+        highWaterMark.accumulate(sizeAfter);
+    }
+
+    /**
+     * Records items removed from the queue.
+     * 
+     * @param count The number of items removed
+     */
+    public void dequeued(int count) {
+        dequeued.add(count);
+    }
+
+    /**
+     * Records a producer that starts waiting for space.
+     * 
+     * @return The time it started waiting, to pass to
+     *         {@link #blockedWhileFull(long)} once it stops
+     */
+    public long waitingWhileFull() {
+        return blockedFull.start();
+    }
+
+    /**
+     * Records a consumer that starts waiting for items.
+     * 
+     * @return The time it started waiting, to pass to
+     *         {@link #blockedWhileEmpty(long)} once it stops
+     */
+    public long waitingWhileEmpty() {
+        return blockedEmpty.start();
+    }
+
+    /**
+     * Records a producer that waited for space.
+     * 
+     * @param blockedSince The time it started waiting, from
+     *                     {@link #waitingWhileFull()}
+     */
+    public void blockedWhileFull(long blockedSince) {
+        blocked(blockedFull, true, blockedSince);
+    }
+
+    /**
+     * Records a consumer that waited for items.
+     * 
+     * @param blockedSince The time it started waiting, from
+     *                     {@link #waitingWhileEmpty()}
+     */
+    public void blockedWhileEmpty(long blockedSince) {
+        blocked(blockedEmpty, false, blockedSince);
+    }
+
+    private void blocked(Waits waits, boolean full, long blockedSince) {
+        long nanos = waits.stop(blockedSince);
+        QueueBlockedEvent event = new QueueBlockedEvent();
+        if (event.isEnabled()) {
+            event.queue = name;
+            event.full = full;
+            event.blockedTime = nanos;
+            event.commit();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    public long getDequeued() {
+        return dequeued.sum();
+    }
+
+    /**
+     * @return The time producers waited for space, including the waits still
+     *         going on
+     */
+    public long getBlockedFullNanos() {
+        return blockedFull.nanos();
+    }
+
+    /**
+     * @return The time consumers waited for items, including the waits still
+     *         going on
+     */
+    public long getBlockedEmptyNanos() {
+        return blockedEmpty.nanos();
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * The waits of one side of the queue: the time of those that are over,
+     * and the number and start times of those going on. The three change
+     * together, so a sample never sees a wait both going on and over.
+     */
+    private static class Waits {
+        private long doneNanos;
+        private int waiting;
+        private long waitingSince;
+
+        synchronized long start() {
+            long now = System.nanoTime();
+            waiting++;
+            waitingSince += now;
+            return now;
+        }
+
+        synchronized long stop(long since) {
+            long nanos = System.nanoTime() - since;
+            doneNanos += nanos;
+            waiting--;
+            waitingSince -= since;
+            return nanos;
+        }
+
+        // The sum of the start times may overflow; the difference does not
+        synchronized long nanos() {
+            return doneNanos + waiting * System.nanoTime() - waitingSince;
+        }
+    }
+}
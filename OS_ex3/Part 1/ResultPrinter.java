@@ -0,0 +1,156 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes the place of the copiers when only the names of the matching files are
+ * wanted. Writes every match to the given writer as soon as it is found, either
+ * as a line of JSON or as a path followed by a NUL character, optionally with
+ * its size and modification time.
+ * <p>
+ * Matches are written in batches into a buffered writer. Once a match is
+ * written, the printer waits for more only until
+ * {@link #FLUSH_INTERVAL_MILLIS} milliseconds have passed and then flushes the
+ * writer, so a consumer reading the output sees each match at most that long
+ * after it is found, and a trickle of matches costs one write per interval
+ * rather than one per match.
+ * <p>
+ * If the output fails, for example because the reader of a pipe exited, the
+ * printer calls its cancel action, which stops the stages that feed it, and
+ * keeps the error for {@link #getFailure()}.
+ */
+public class ResultPrinter implements Runnable {
+
+    public static final long FLUSH_INTERVAL_MILLIS = 100;
+
+    private static final int BATCH_SIZE = 64;
+
+    private final ProducerConsumerQueue<FileEntry> resultsQueue;
+    private final Writer out;
+    private final boolean ndjson;
+    private final boolean attributes;
+    private final PipelineMetrics metrics;
+    private final Runnable cancel;
+    private final StringBuilder line = new StringBuilder();
+    private volatile IOException failure;
+
+    /**
+     * Constructor.
+     * 
+     * @param resultsQueue The queue of files found
+     * @param out          The writer to print to, flushed but not closed
+     * @param format       "ndjson" or "nul"
+     * @param attributes   Whether to print the size and modification time of
+     *                     every file
+     * @param metrics      The metrics of the run
+     * @param cancel       Stops the search when the output fails, so that no
+     *                     searcher blocks on the results queue forever
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public ResultPrinter(ProducerConsumerQueue<FileEntry> resultsQueue, Writer out, String format,
+            boolean attributes, PipelineMetrics metrics, Runnable cancel) {
+        if (!format.equals("ndjson") && !format.equals("nul")) {
+            throw new IllegalArgumentException("Unknown output format: " + format);
+        }
+        this.resultsQueue = resultsQueue;
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 64 * 1024);
+        this.ndjson = format.equals("ndjson");
+        this.attributes = attributes;
+        this.metrics = metrics;
+        this.cancel = cancel;
+    }
+
+    /**
+     * Prints matches until the results queue has no more files, or until the
+     * output fails.
+     */
+    @Override
+    public void run() {
+        List<FileEntry> batch = new ArrayList<>(BATCH_SIZE);
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS);
+        // Whether matches were written since the last flush, and when they are due
+        boolean pending = false;
+        long flushBy = 0;
+        try {
+            while (true) {
+                if (!pending) {
+                    if (resultsQueue.drainTo(batch, BATCH_SIZE) == 0) {
+                        break;
+                    }
+                } else {
+                    FileEntry file = resultsQueue.poll(Math.max(flushBy - System.nanoTime(), 0),
+                            TimeUnit.NANOSECONDS);
+                    if (file == null) {
+                        out.flush();
+                        pending = false;
+                        continue;
+                    }
+                    do {
+                        batch.add(file);
+                    } while (batch.size() < BATCH_SIZE && (file = resultsQueue.poll(0, TimeUnit.NANOSECONDS)) != null);
+                }
+                for (FileEntry file : batch) {
+                    print(file);
+                }
+                metrics.filesListed(batch.size());
+                batch.clear();
+                if (!pending) {
+                    pending = true;
+                    flushBy = System.nanoTime() + intervalNanos;
+                } else if (System.nanoTime() - flushBy >= 0) {
+                    out.flush();
+                    pending = false;
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+            cancel.run();
+        }
+    }
+
+    /**
+     * @return The error that stopped the output, or null if there was none
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private void print(FileEntry file) throws IOException {
+        line.setLength(0);
+        if (ndjson) {
+            line.append("{\"path\":");
+            appendJsonString(file.toString());
+            if (attributes) {
+                line.append(",\"size\":").append(file.size());
+                line.append(",\"mtime\":\"").append(Instant.ofEpochMilli(file.lastModified())).append('"');
+            }
+            line.append("}\n");
+        } else {
+            if (attributes) {
+                line.append(file.size()).append('\t').append(file.lastModified()).append('\t');
+            }
+            line.append(file.toString()).append('\0');
+        }
+        out.append(line);
+    }
+
+    private void appendJsonString(String text) {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
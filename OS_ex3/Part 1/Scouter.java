@@ -3,7 +3,7 @@ import java.io.File;
 /**
  * The Scouter class is responsible for starting the scouter thread. It lists
  * directories under the root directory
- * and adds them to a queue. It then lists directories in the next level and
+ * and adds their listings to a queue. It then lists directories in the next level and
  * enqueues them, and so on. This method
  * begins by registering to the directory queue as a producer and when it
  * finishes, it unregisters from it.
@@ -11,8 +11,12 @@ import java.io.File;
 public class Scouter implements Runnable {
 
     private static boolean consractorFlag = true;
-    private SynchronizedQueue<File> directoryQueue;
+    private ProducerConsumerQueue<DirectoryListing> directoryQueue;
     private File root;
+    private SearchIndex index;
+    private PruningRules pruning;
+    private FileEntry rootEntry;
+    private PipelineMetrics metrics;
     private final Object lock = new Object();
 
     /**
@@ -23,11 +27,36 @@ public class Scouter implements Runnable {
      * @param directoryQueue
      *                       the directory queue to add the directories to
      */
-    public Scouter(SynchronizedQueue<File> directoryQueue, File root) {
+    public Scouter(ProducerConsumerQueue<DirectoryListing> directoryQueue, File root) {
+        this(directoryQueue, root, PruningRules.NONE, null, new PipelineMetrics());
+    }
+
+    /**
+     * Initializes a new instance of the Scouter class that prunes the tree with
+     * the given rules, serves unchanged directories from the index of a
+     * previous run and records its work in the run's metrics.
+     * 
+     * @param directoryQueue
+     *                       the directory queue to add the directories to
+     * @param root
+     *                       the root directory to start the search from
+     * @param pruning
+     *                       the rules deciding which entries to leave out
+     * @param index
+     *                       the index of the previous run, or null to list
+     *                       every directory
+     * @param metrics
+     *                       the metrics of the run
+     */
+    public Scouter(ProducerConsumerQueue<DirectoryListing> directoryQueue, File root, PruningRules pruning,
+            SearchIndex index, PipelineMetrics metrics) {
         synchronized (lock) {
             if (consractorFlag) {
                 this.root = root;
                 this.directoryQueue = directoryQueue;
+                this.pruning = pruning;
+                this.index = index;
+                this.metrics = metrics;
                 consractorFlag = false;
             }
         }
@@ -41,21 +70,32 @@ public class Scouter implements Runnable {
     public void run() {
         try {
             directoryQueue.registerProducer();
-            enqueueDirectories(root);
+            rootEntry = DirectoryListing.directoryEntry(root.toPath());
+            if (rootEntry != null)
+                enqueueDirectories(rootEntry, 0, null);
         } finally {
             directoryQueue.unregisterProducer();
         }
     }
 
-    private void enqueueDirectories(File directory) {
-        if (directory.isDirectory())
-            directoryQueue.enqueue(directory);
+    private void enqueueDirectories(FileEntry directory, int depth, IgnoreRules inherited) {
+        if (directoryQueue.isClosed())
+            // The search was cancelled or has all the matches it wants
+            return;
+        DirectoryScannedEvent event = new DirectoryScannedEvent();
+        event.begin();
+        DirectoryListing listing = index == null ? null : index.cachedListing(directory);
+        if (listing == null)
+            listing = DirectoryListing.read(directory);
+        if (index != null)
+            index.recordDirectory(listing);
+        metrics.directoryScanned(listing, event);
+        IgnoreRules ignore = pruning.ignoreRules(listing, inherited);
+        listing = pruning.apply(listing, rootEntry, depth, ignore);
+        directoryQueue.enqueue(listing);
 
-        File[] files = directory.listFiles(File::isDirectory);
-        if (files != null) {
-            for (File file : files) {
-                enqueueDirectories(file);
-            }
+        for (FileEntry subdirectory : listing.getSubdirectories()) {
+            enqueueDirectories(subdirectory, depth + 1, ignore);
         }
     }
 
@@ -0,0 +1,268 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent index of a previous run, used to make repeated runs over the
+ * same root incremental. The index records, for every directory, its
+ * modification time and the names of its subdirectories, and for every matched
+ * file its size, modification time and the name it was copied to.
+ * <p>
+ * Adding, removing or renaming an entry changes the modification time of its
+ * directory, so a directory whose time is unchanged still has the entries it
+ * had in the previous run. Such a directory is not listed again: its
+ * subdirectories and previous matches are taken from the index and only they
+ * are queried for attributes. Every directory of the tree is still visited,
+ * since a change deep in a subtree does not touch the times of its ancestors.
+ * A matched file whose size and modification time are unchanged and whose copy
+ * is still at the destination is not copied again.
+ * <p>
+ * The index is stored in a compact binary file that is replaced atomically at
+ * the end of a run. Directory records are only reused when the index was
+ * written by a search with the same search key, which covers the pattern and
+ * every filter and pruning option, and not at all when the contents of files
+ * decide whether they match, since an edit to a file does not change its
+ * directory.
+ */
+public class SearchIndex {
+
+    public static final String DEFAULT_FILE_NAME = ".disksearcher.index";
+
+    private static final int MAGIC = 0x44534958;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final String searchKey;
+    private final boolean reuseListings;
+    private final Map<String, DirectoryRecord> previousDirectories;
+    private final Map<String, MatchRecord> previousMatches;
+    private final Map<String, List<String>> previousMatchesByDirectory;
+    private final Map<String, DirectoryRecord> directories = new ConcurrentHashMap<>();
+    private final Map<String, MatchRecord> matches = new ConcurrentHashMap<>();
+
+    private SearchIndex(Path file, String searchKey, boolean reuseListings,
+            Map<String, DirectoryRecord> previousDirectories, Map<String, MatchRecord> previousMatches) {
+        this.file = file;
+        this.searchKey = searchKey;
+        this.reuseListings = reuseListings;
+        this.previousDirectories = previousDirectories;
+        this.previousMatches = previousMatches;
+        this.previousMatchesByDirectory = new HashMap<>();
+        for (Map.Entry<String, MatchRecord> match : previousMatches.entrySet()) {
+            Path source = Path.of(match.getKey());
+            Path parent = source.getParent();
+            if (parent != null) {
+                previousMatchesByDirectory.computeIfAbsent(parent.toString(), key -> new ArrayList<>())
+                        .add(source.getFileName().toString());
+            }
+        }
+    }
+
+    /**
+     * Loads the index from the given file. A missing or unreadable file yields
+     * an empty index, as on a first run.
+     * 
+     * @param file          The index file
+     * @param searchKey     A description of the search parameters; directory
+     *                      records written under another key are ignored
+     * @param reuseListings Whether unchanged directories may be served from the
+     *                      index instead of being listed
+     * @return the index
+     */
+    public static SearchIndex load(Path file, String searchKey, boolean reuseListings) {
+        Map<String, DirectoryRecord> directories = new HashMap<>();
+        Map<String, MatchRecord> matches = new HashMap<>();
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not an index file: " + file);
+                }
+                boolean sameSearch = in.readUTF().equals(searchKey);
+                int directoryCount = in.readInt();
+                for (int i = 0; i < directoryCount; i++) {
+                    String path = in.readUTF();
+                    long lastModified = in.readLong();
+                    int subdirectoryCount = in.readInt();
+                    List<String> subdirectories = new ArrayList<>(subdirectoryCount);
+                    for (int j = 0; j < subdirectoryCount; j++) {
+                        subdirectories.add(in.readUTF());
+                    }
+                    if (sameSearch) {
+                        directories.put(path, new DirectoryRecord(lastModified, subdirectories));
+                    }
+                }
+                int matchCount = in.readInt();
+                for (int i = 0; i < matchCount; i++) {
+                    String path = in.readUTF();
+                    long size = in.readLong();
+                    long lastModified = in.readLong();
+                    String destination = in.readBoolean() ? in.readUTF() : null;
+                    if (sameSearch || destination != null) {
+                        matches.put(path, new MatchRecord(size, lastModified, destination));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable index " + file + ": " + e.getMessage());
+                directories.clear();
+                matches.clear();
+            }
+        }
+        return new SearchIndex(file, searchKey, reuseListings, directories, matches);
+    }
+
+    /**
+     * Returns a listing of the given directory built from the index, if the
+     * directory has not changed since the previous run. The listing holds the
+     * directory's subdirectories and the files that matched in the previous run,
+     * with fresh attributes.
+     * 
+     * @param directory The directory to list
+     * @return the listing, or null if the directory has to be read
+     */
+    public DirectoryListing cachedListing(FileEntry directory) {
+        if (!reuseListings) {
+            return null;
+        }
+        String path = directory.getPath().toString();
+        DirectoryRecord record = previousDirectories.get(path);
+        if (record == null || record.lastModified != directory.lastModified()) {
+            return null;
+        }
+        List<FileEntry> subdirectories = new ArrayList<>(record.subdirectories.size());
+        for (String name : record.subdirectories) {
+            FileEntry subdirectory = DirectoryListing.directoryEntry(directory.getPath().resolve(name));
+            if (subdirectory != null) {
+                subdirectories.add(subdirectory);
+            }
+        }
+        List<FileEntry> files = new ArrayList<>();
+        for (String name : previousMatchesByDirectory.getOrDefault(path, Collections.emptyList())) {
+            FileEntry file = DirectoryListing.fileEntry(directory.getPath().resolve(name));
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return new DirectoryListing(directory, subdirectories, files);
+    }
+
+    /**
+     * Records a directory as it was seen in this run.
+     * 
+     * @param listing The listing of the directory
+     */
+    public void recordDirectory(DirectoryListing listing) {
+        List<String> subdirectories = new ArrayList<>(listing.getSubdirectories().size());
+        for (FileEntry subdirectory : listing.getSubdirectories()) {
+            subdirectories.add(subdirectory.getName());
+        }
+        FileEntry directory = listing.getDirectory();
+        directories.put(directory.getPath().toString(),
+                new DirectoryRecord(directory.lastModified(), subdirectories));
+    }
+
+    /**
+     * Returns the name the given file was copied to in the previous run, if the
+     * file has not changed since.
+     * 
+     * @param file The matched file
+     * @return the name of the previous copy, or null
+     */
+    public String previousCopy(FileEntry file) {
+        MatchRecord record = previousMatches.get(file.getPath().toString());
+        if (record == null || record.size != file.size() || record.lastModified != file.lastModified()) {
+            return null;
+        }
+        return record.destination;
+    }
+
+    /**
+     * Returns the name the given file was copied to in the previous run, whether
+     * or not it changed since.
+     * 
+     * @param file The matched file
+     * @return the name of the previous copy, or null
+     */
+    public String previousDestination(FileEntry file) {
+        MatchRecord record = previousMatches.get(file.getPath().toString());
+        return record == null ? null : record.destination;
+    }
+
+    /**
+     * Records a file matched in this run.
+     * 
+     * @param file        The matched file
+     * @param destination The name of its copy, or null if it was not copied
+     */
+    public void recordMatch(FileEntry file, String destination) {
+        matches.put(file.getPath().toString(), new MatchRecord(file.size(), file.lastModified(), destination));
+    }
+
+    /**
+     * Writes the records of this run to the index file, replacing the previous
+     * index atomically.
+     * 
+     * @throws IOException If the index cannot be written
+     */
+    public void save() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(searchKey);
+            out.writeInt(directories.size());
+            for (Map.Entry<String, DirectoryRecord> directory : directories.entrySet()) {
+                out.writeUTF(directory.getKey());
+                out.writeLong(directory.getValue().lastModified);
+                out.writeInt(directory.getValue().subdirectories.size());
+                for (String subdirectory : directory.getValue().subdirectories) {
+                    out.writeUTF(subdirectory);
+                }
+            }
+            out.writeInt(matches.size());
+            for (Map.Entry<String, MatchRecord> match : matches.entrySet()) {
+                out.writeUTF(match.getKey());
+                out.writeLong(match.getValue().size);
+                out.writeLong(match.getValue().lastModified);
+                out.writeBoolean(match.getValue().destination != null);
+                if (match.getValue().destination != null) {
+                    out.writeUTF(match.getValue().destination);
+                }
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class DirectoryRecord {
+        private final long lastModified;
+        private final List<String> subdirectories;
+
+        DirectoryRecord(long lastModified, List<String> subdirectories) {
+            this.lastModified = lastModified;
+            this.subdirectories = subdirectories;
+        }
+    }
+
+    private static class MatchRecord {
+        private final long size;
+        private final long lastModified;
+        private final String destination;
+
+        MatchRecord(long size, long lastModified, String destination) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.destination = destination;
+        }
+    }
+}
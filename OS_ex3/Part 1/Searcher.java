@@ -1,4 +1,6 @@
-import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A searcher thread. Searches for files containing a given pattern and that end
@@ -6,26 +8,82 @@ import java.io.File;
  * in all directories listed in a directory queue.
  */
 public class Searcher extends Object implements Runnable {
-    private final String pattern;
-    private final String extension;
-    private final SynchronizedQueue<File> directoryQueue;
-    private final SynchronizedQueue<File> resultsQueue;
+    private final FileNameMatcher nameMatcher;
+    private final AttributeFilter attributeFilter;
+    private final ContentMatcher contentMatcher;
+    private final MatchLimit limit;
+    private final ProducerConsumerQueue<DirectoryListing> directoryQueue;
+    private final ProducerConsumerQueue<FileEntry> resultsQueue;
+    private final PipelineMetrics metrics;
+    private volatile boolean retired;
 
     /**
      * Constructor. Initializes the searcher thread.
      * 
      * @param pattern        Pattern to look for
      * @param extension      Wanted extension
-     * @param directoryQueue A queue with directories to search in (as listed by the
-     *                       scouter)
+     * @param directoryQueue A queue with directory listings to search in (as read
+     *                       by the scouter)
      * @param resultsQueue   A queue for files found (to be copied by a copier)
      */
-    public Searcher(String pattern, String extension, SynchronizedQueue<File> directoryQueue,
-            SynchronizedQueue<File> resultsQueue) {
-        this.pattern = pattern;
-        this.extension = extension;
+    public Searcher(String pattern, String extension, ProducerConsumerQueue<DirectoryListing> directoryQueue,
+            ProducerConsumerQueue<FileEntry> resultsQueue) {
+        this(FileNameMatcher.literal(pattern, extension), AttributeFilter.NONE, null, directoryQueue, resultsQueue,
+                new PipelineMetrics());
+    }
+
+    /**
+     * Constructor. Initializes a searcher thread that may also require the
+     * contents of a file to match, and records its work in the run's metrics.
+     * The searcher registers to the results queue as a producer here, so that
+     * consumers started before it runs do not find the queue finished; it must
+     * therefore be run once it is constructed.
+     * 
+     * @param nameMatcher     Matcher the name of a file must satisfy, shared by
+     *                        all searchers
+     * @param attributeFilter Bounds on the size and modification time of a file
+     * @param contentMatcher  Matcher the contents of a file must satisfy, or null
+     *                        to match by name only
+     * @param directoryQueue  A queue with directory listings to search in (as
+     *                        read by the scouter)
+     * @param resultsQueue    A queue for files found (to be copied by a copier)
+     * @param metrics         The metrics of the run
+     */
+    public Searcher(FileNameMatcher nameMatcher, AttributeFilter attributeFilter, ContentMatcher contentMatcher,
+            ProducerConsumerQueue<DirectoryListing> directoryQueue, ProducerConsumerQueue<FileEntry> resultsQueue,
+            PipelineMetrics metrics) {
+        this(nameMatcher, attributeFilter, contentMatcher, MatchLimit.NONE, directoryQueue, resultsQueue, metrics);
+    }
+
+    /**
+     * Constructor. Initializes a searcher thread that stops the search once the
+     * limit of matches is reached: it closes the directory queue, so the
+     * scouter and the other searchers stop too, while the matches already
+     * enqueued are still copied.
+     * 
+     * @param nameMatcher     Matcher the name of a file must satisfy, shared by
+     *                        all searchers
+     * @param attributeFilter Bounds on the size and modification time of a file
+     * @param contentMatcher  Matcher the contents of a file must satisfy, or null
+     *                        to match by name only
+     * @param limit           The number of matches to stop after, shared by all
+     *                        searchers
+     * @param directoryQueue  A queue with directory listings to search in (as
+     *                        read by the scouter)
+     * @param resultsQueue    A queue for files found (to be copied by a copier)
+     * @param metrics         The metrics of the run
+     */
+    public Searcher(FileNameMatcher nameMatcher, AttributeFilter attributeFilter, ContentMatcher contentMatcher,
+            MatchLimit limit, ProducerConsumerQueue<DirectoryListing> directoryQueue,
+            ProducerConsumerQueue<FileEntry> resultsQueue, PipelineMetrics metrics) {
+        this.nameMatcher = nameMatcher;
+        this.limit = limit;
+        this.attributeFilter = attributeFilter;
+        this.contentMatcher = contentMatcher;
         this.directoryQueue = directoryQueue;
         this.resultsQueue = resultsQueue;
+        this.metrics = metrics;
+        resultsQueue.registerProducer();
     }
 
     /**
@@ -35,15 +93,14 @@ public class Searcher extends Object implements Runnable {
      * subdirectories!).
      * Files that contain the pattern and have the wanted extension are enqueued to
      * the results queue.
-     * This method begins by registering to the results queue as a producer and when
-     * finishes, it unregisters from it.
+     * The searcher is registered to the results queue as a producer since it was
+     * constructed, and when this method finishes, it unregisters from it.
      */
     @Override
     public void run() {
         try {
-            resultsQueue.registerProducer();
-            File directory;
-            while ((directory = directoryQueue.dequeue()) != null) {
+            DirectoryListing directory;
+            while (!retired && (directory = directoryQueue.dequeue()) != null) {
                 searchFiles(directory);
             }
         } finally {
@@ -51,20 +108,39 @@ public class Searcher extends Object implements Runnable {
         }
     }
 
-    private void searchFiles(File directory) {
-        File[] files = directory.listFiles(File::isFile);
-       
-        if (files != null) {
-            for (File file : files) {
-                if (isFileMatch(file)) 
-                    resultsQueue.enqueue(file);
-            }
+    /**
+     * Asks the searcher to finish after the directory it is searching, or
+     * waiting for, without taking more directories from the queue. The searcher
+     * still unregisters from the results queue when it finishes.
+     */
+    public void retire() {
+        retired = true;
+    }
+
+    private void searchFiles(DirectoryListing directory) {
+        List<FileEntry> matches = new ArrayList<>();
+        for (FileEntry file : directory.getFiles()) {
+            if (nameMatcher.matches(file.getName()) && attributeFilter.accepts(file) && isContentMatch(file))
+                matches.add(file);
         }
+        metrics.directorySearched(directory.getFiles().size(), matches.size());
+        if (matches.isEmpty())
+            return;
+        int granted = limit.claim(matches.size());
+        if (granted > 0)
+            resultsQueue.enqueueAll(granted < matches.size() ? matches.subList(0, granted) : matches);
+        if (limit.isReached())
+            directoryQueue.close();
     }
 
-    private boolean isFileMatch(File file) {
-        String name = file.getName();
-        String baseName = name.substring(0, name.length() - extension.length());
-        return  baseName.contains(pattern) && name.endsWith(extension);
+    private boolean isContentMatch(FileEntry file) {
+        if (contentMatcher == null)
+            return true;
+        try {
+            return contentMatcher.matches(file);
+        } catch (IOException e) {
+            // A file we cannot read does not match
+            return false;
+        }
     }
 }
\ No newline at end of file
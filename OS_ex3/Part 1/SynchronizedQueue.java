@@ -1,15 +1,22 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A synchronized bounded-size queue for multithreaded producer-consumer
  * applications.
  * 
  * @param <T> Type of data items
  */
-public class SynchronizedQueue<T> {
+public class SynchronizedQueue<T> implements ProducerConsumerQueue<T> {
 
 	private T[] buffer;
 	private int producers;
+	private boolean closed;
 	private ArrayQueue<T> queue;
 	private final Object lock = new Object();
+	private final QueueMetrics metrics;
 
 	/**
 	 * Constructor. Allocates a buffer (an array) with the given capacity and
@@ -17,11 +24,23 @@ public class SynchronizedQueue<T> {
 	 * 
 	 * @param capacity Buffer capacity
 	 */
-	@SuppressWarnings("unchecked")
 	public SynchronizedQueue(int capacity) {
+		this(capacity, "queue");
+	}
+
+	/**
+	 * Constructor. Allocates a buffer (an array) with the given capacity and
+	 * resets pointers and counters.
+	 * 
+	 * @param capacity Buffer capacity
+	 * @param name     Queue name, used in metrics
+	 */
+	@SuppressWarnings("unchecked")
+	public SynchronizedQueue(int capacity, String name) {
 		this.buffer = (T[]) (new Object[capacity]);
 		this.producers = 0;
 		this.queue = new ArrayQueue<>(buffer);
+		this.metrics = new QueueMetrics(name);
 	}
 
 	/**
@@ -37,22 +56,38 @@ public class SynchronizedQueue<T> {
 	 */
 	public T dequeue() {
 		synchronized (lock) {
-			while (queue.isEmpty() && producers > 0) {
-				try {
-					lock.wait();
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
+			if (!awaitNotEmpty(false, 0)) {
+				return null;
 			}
-			if (queue.isEmpty() && producers == 0) {
+			T item = queue.dequeue();
+			metrics.dequeued(1);
+			lock.notifyAll();
+			return item;
+		}
+	}
+
+	/**
+	 * Dequeues the first item from the queue, waiting at most the given time
+	 * for one to become available.
+	 * 
+	 * @param timeout How long to wait
+	 * @param unit    The unit of the timeout
+	 * @return The first item, or null if there was none in time or there are
+	 *         no more items
+	 */
+	@Override
+	public T poll(long timeout, TimeUnit unit) {
+		synchronized (lock) {
+			if (!awaitNotEmpty(true, unit.toNanos(timeout))) {
 				return null;
 			}
 			T item = queue.dequeue();
+			metrics.dequeued(1);
 			lock.notifyAll();
 			return item;
 		}
 	}
-	
+
 
 	/**
 	 * Enqueues an item to the end of this queue. If the queue is full, this
@@ -62,20 +97,159 @@ public class SynchronizedQueue<T> {
 	 */
 	public void enqueue(T item) {
 		synchronized (lock) {
-			while (queue.isFull()) {
+			boolean blocked = false;
+			long blockedSince = 0;
+			while (queue.isFull() && !closed) {
+				if (!blocked) {
+					blocked = true;
+					blockedSince = metrics.waitingWhileFull();
+				}
 				try {
 					lock.wait();
 				} catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
+					break;
 				}
 			}
+			if (blocked) {
+				metrics.blockedWhileFull(blockedSince);
+			}
+			if (queue.isFull() || closed) {
+				return;
+			}
 			queue.enqueue(item);
+			metrics.enqueued(1, queue.size());
 			if (queue.size() == 1) {
 				lock.notifyAll();
 			}
 		}
 	}
-	
+
+
+	/**
+	 * Enqueues an item if the queue is not full, without waiting.
+	 * 
+	 * @param item Item to enqueue
+	 * @return true if the item was enqueued
+	 */
+	@Override
+	public boolean offer(T item) {
+		synchronized (lock) {
+			if (queue.isFull() || closed) {
+				return false;
+			}
+			queue.enqueue(item);
+			metrics.enqueued(1, queue.size());
+			if (queue.size() == 1) {
+				lock.notifyAll();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Enqueues all items of the given collection, in iteration order. The items
+	 * are copied into the buffer in bulk, as many as fit each time the lock is
+	 * held, and consumers are notified once per bulk copy rather than per item.
+	 * 
+	 * @param items Items to enqueue
+	 */
+	@Override
+	public void enqueueAll(Collection<? extends T> items) {
+		List<T> pending = new ArrayList<>(items);
+		int offset = 0;
+		synchronized (lock) {
+			while (offset < pending.size()) {
+				boolean blocked = false;
+				long blockedSince = 0;
+				while (queue.isFull() && !closed) {
+					if (!blocked) {
+						blocked = true;
+						blockedSince = metrics.waitingWhileFull();
+					}
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				if (blocked) {
+					metrics.blockedWhileFull(blockedSince);
+				}
+				if (queue.isFull() || closed) {
+					return;
+				}
+				int count = Math.min(queue.remainingCapacity(), pending.size() - offset);
+				queue.enqueueAll(pending.subList(offset, offset + count));
+				metrics.enqueued(count, queue.size());
+				offset += count;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Dequeues up to <code>max</code> items in a single lock acquisition.
+	 * 
+	 * @param target Collection to transfer the items into
+	 * @param max    Maximal number of items to transfer
+	 * @return The number of items transferred, or 0 if there are no more items
+	 * @see #dequeue()
+	 */
+	@Override
+	public int drainTo(Collection<? super T> target, int max) {
+		synchronized (lock) {
+			if (!awaitNotEmpty(false, 0)) {
+				return 0;
+			}
+			int count = queue.drainTo(target, max);
+			if (count > 0) {
+				metrics.dequeued(count);
+				lock.notifyAll();
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Waits while the queue is empty and producers are still registered, at
+	 * most the given time if timed. Called with the lock held. The wait ends
+	 * early when the queue is closed or the thread is interrupted.
+	 * 
+	 * @param timed Whether the wait is bounded
+	 * @param nanos The longest wait, if timed
+	 * @return true if an item can be dequeued
+	 */
+	private boolean awaitNotEmpty(boolean timed, long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		boolean blocked = false;
+		long blockedSince = 0;
+		while (queue.isEmpty() && producers > 0 && !closed) {
+			long remaining = timed ? deadline - System.nanoTime() : 0;
+			if (timed && remaining <= 0) {
+				break;
+			}
+			if (!blocked) {
+				blocked = true;
+				blockedSince = metrics.waitingWhileEmpty();
+			}
+			try {
+				if (timed) {
+					TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+				} else {
+					lock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		if (blocked) {
+			metrics.blockedWhileEmpty(blockedSince);
+		}
+		return !queue.isEmpty() && !closed;
+	}
 
 	/**
 	 * Returns the capacity of this queue
@@ -132,6 +306,24 @@ public class SynchronizedQueue<T> {
 		}
 	}
 
+	/**
+	 * Closes the queue and wakes every waiting producer and consumer.
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public boolean isClosed() {
+		synchronized (lock) {
+			return closed;
+		}
+	}
+
 	public synchronized boolean isEmpty() {
 		return queue.isEmpty();
 	}
@@ -139,4 +331,9 @@ public class SynchronizedQueue<T> {
 	public synchronized int getProducers() {
 		return producers;
 	}
+
+	@Override
+	public QueueMetrics getMetrics() {
+		return metrics;
+	}
 }
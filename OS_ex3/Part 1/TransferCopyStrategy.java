@@ -0,0 +1,39 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies files with {@link FileChannel#transferTo}, which lets the kernel move
+ * the data between the files (sendfile/copy_file_range on Linux) without
+ * passing it through a user-space buffer.
+ */
+public class TransferCopyStrategy implements CopyStrategy {
+
+    /**
+     * Copies the source file into the target file, letting the kernel move the
+     * data. transferTo may move fewer bytes than requested, so it is called until
+     * the whole file is copied.
+     * 
+     * @param source The file to copy
+     * @param target The file to copy into
+     * @throws IOException If an error occurs during the copy process
+     */
+    @Override
+    public void copy(FileEntry source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source.getPath(), StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0 && in.size() <= position) {
+                    // The source was truncated while we were copying it
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of ArrayQueue, the circular buffer under the pipeline
+ * queues. It is not thread-safe and is measured single-threaded, as the cost
+ * floor of the buffer itself for {@link QueueBenchmark}: every operation
+ * enqueues one item and dequeues one from a half-full queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayQueueBenchmark {
+
+    private static final Long ITEM = 1L;
+
+    /** 50 is DiskSearcher.RESULTS_QUEUE_CAPACITY. */
+    @Param({ "50", "1024", "16384" })
+    public int capacity;
+
+    private BenchQueue queue;
+
+    @Setup(Level.Iteration)
+    public void createQueue() throws InterruptedException {
+        queue = Queues.load().arrayQueue(capacity);
+        for (int i = 0; i < capacity / 2; i++) {
+            queue.put(ITEM);
+        }
+    }
+
+    @Benchmark
+    public Long enqueueDequeue() throws InterruptedException {
+        queue.put(ITEM);
+        return queue.take();
+    }
+}
@@ -0,0 +1,15 @@
+package bench;
+
+/**
+ * The operations the queue benchmarks need, implemented by every queue under
+ * test.
+ */
+public interface BenchQueue {
+
+    void put(Long item) throws InterruptedException;
+
+    Long take() throws InterruptedException;
+
+    /** Wakes every thread waiting in the queue and makes it return from now on. */
+    void close();
+}
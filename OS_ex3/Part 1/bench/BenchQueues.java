@@ -0,0 +1,60 @@
+import bench.BenchQueue;
+import bench.Queues;
+
+/**
+ * The pipeline queues for the benchmarks of package bench, which cannot name
+ * them; see {@link Queues}.
+ */
+public class BenchQueues implements Queues {
+
+    // One producer stays registered for the whole iteration: closing the
+    // queue, not unregistering, ends it
+    @Override
+    public BenchQueue pipelineQueue(String queue, int capacity) {
+        ProducerConsumerQueue<Long> pipelineQueue;
+        switch (queue) {
+            case "SynchronizedQueue":
+                pipelineQueue = new SynchronizedQueue<>(capacity);
+                break;
+            case "ConditionQueue":
+                pipelineQueue = new ConditionQueue<>(capacity);
+                break;
+            case "LockFreeQueue":
+                pipelineQueue = new LockFreeQueue<>(capacity);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown queue: " + queue);
+        }
+        pipelineQueue.registerProducer();
+        return new BenchQueue() {
+            public void put(Long item) {
+                pipelineQueue.enqueue(item);
+            }
+
+            public Long take() {
+                return pipelineQueue.dequeue();
+            }
+
+            public void close() {
+                pipelineQueue.close();
+            }
+        };
+    }
+
+    @Override
+    public BenchQueue arrayQueue(int capacity) {
+        ArrayQueue<Long> queue = new ArrayQueue<>(new Long[capacity]);
+        return new BenchQueue() {
+            public void put(Long item) {
+                queue.enqueue(item);
+            }
+
+            public Long take() {
+                return queue.dequeue();
+            }
+
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,189 @@
+package bench;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * JMH benchmark of the pipeline queues. Compares SynchronizedQueue,
+ * ConditionQueue and LockFreeQueue with the bounded {@link ArrayBlockingQueue}
+ * and {@link LinkedBlockingQueue} for 1:1, 4:1, 4:4 and 16:16
+ * producer/consumer groups and several capacities, including the capacity
+ * DiskSearcher uses. {@link ArrayQueueBenchmark} measures the buffer alone.
+ * <p>
+ * Every group is a producer method and a consumer method sharing one queue.
+ * JMH reports the throughput of each, and, in {@link Mode#SampleTime}, the
+ * distribution of the time a put or a take takes, blocking included.
+ * <p>
+ * A thread blocked in the queue when the iteration ends would never return,
+ * so the first thread that sees {@link Control#stopMeasurement} closes the
+ * queue, which wakes the others; a new queue is created for the next
+ * iteration.
+ * <p>
+ * Usage: <code>java -jar bench/target/benchmarks.jar QueueBenchmark</code>,
+ * see bench/pom.xml
+ */
+@State(Scope.Group)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    private static final Long ITEM = 1L;
+
+    /** The queues under test. */
+    @Param({ "SynchronizedQueue", "ConditionQueue", "LockFreeQueue", "ArrayBlockingQueue", "LinkedBlockingQueue" })
+    public String queue;
+
+    /** 50 is DiskSearcher.RESULTS_QUEUE_CAPACITY. */
+    @Param({ "50", "1024", "16384" })
+    public int capacity;
+
+    private BenchQueue benchQueue;
+
+    @Setup(Level.Iteration)
+    public void createQueue() {
+        switch (queue) {
+            case "ArrayBlockingQueue":
+                benchQueue = blockingQueue(new ArrayBlockingQueue<>(capacity));
+                break;
+            case "LinkedBlockingQueue":
+                benchQueue = blockingQueue(new LinkedBlockingQueue<>(capacity));
+                break;
+            default:
+                benchQueue = Queues.load().pipelineQueue(queue, capacity);
+        }
+    }
+
+    // These queues cannot be closed: the closing thread empties the queue for
+    // the blocked producers and feeds poison to the blocked consumers until no
+    // thread is left inside
+    private static BenchQueue blockingQueue(BlockingQueue<Long> queue) {
+        Long poison = Long.MIN_VALUE;
+        AtomicInteger inside = new AtomicInteger();
+        return new BenchQueue() {
+            private volatile boolean closed;
+
+            public void put(Long item) throws InterruptedException {
+                inside.incrementAndGet();
+                try {
+                    if (!closed) {
+                        queue.put(item);
+                    }
+                } finally {
+                    inside.decrementAndGet();
+                }
+            }
+
+            public Long take() throws InterruptedException {
+                inside.incrementAndGet();
+                try {
+                    return closed ? null : queue.take();
+                } finally {
+                    inside.decrementAndGet();
+                }
+            }
+
+            public void close() {
+                closed = true;
+                while (inside.get() > 0) {
+                    queue.clear();
+                    queue.offer(poison);
+                    Thread.yield();
+                }
+            }
+        };
+    }
+
+    private void put(Control control) throws InterruptedException {
+        if (control.stopMeasurement) {
+            benchQueue.close();
+            return;
+        }
+        benchQueue.put(ITEM);
+    }
+
+    private Long take(Control control) throws InterruptedException {
+        if (control.stopMeasurement) {
+            benchQueue.close();
+            return null;
+        }
+        return benchQueue.take();
+    }
+
+    @Benchmark
+    @Group("oneToOne")
+    @GroupThreads(1)
+    public void oneToOnePut(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("oneToOne")
+    @GroupThreads(1)
+    public Long oneToOneTake(Control control) throws InterruptedException {
+        return take(control);
+    }
+
+    @Benchmark
+    @Group("fourToOne")
+    @GroupThreads(4)
+    public void fourToOnePut(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("fourToOne")
+    @GroupThreads(1)
+    public Long fourToOneTake(Control control) throws InterruptedException {
+        return take(control);
+    }
+
+    @Benchmark
+    @Group("fourToFour")
+    @GroupThreads(4)
+    public void fourToFourPut(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("fourToFour")
+    @GroupThreads(4)
+    public Long fourToFourTake(Control control) throws InterruptedException {
+        return take(control);
+    }
+
+    @Benchmark
+    @Group("sixteenToSixteen")
+    @GroupThreads(16)
+    public void sixteenToSixteenPut(Control control) throws InterruptedException {
+        put(control);
+    }
+
+    @Benchmark
+    @Group("sixteenToSixteen")
+    @GroupThreads(16)
+    public Long sixteenToSixteenTake(Control control) throws InterruptedException {
+        return take(control);
+    }
+}
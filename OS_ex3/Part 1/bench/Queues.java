@@ -0,0 +1,34 @@
+package bench;
+
+/**
+ * The queues of the pipeline, seen as {@link BenchQueue}s. JMH needs the
+ * benchmarks in a named package, which cannot refer to the classes of the
+ * default package, so this is implemented by BenchQueues, a default package
+ * class of this module, and loaded by name.
+ */
+public interface Queues {
+
+    /**
+     * @param queue    SynchronizedQueue, ConditionQueue or LockFreeQueue
+     * @param capacity Capacity of the queue
+     * @return The queue, with one producer registered
+     */
+    BenchQueue pipelineQueue(String queue, int capacity);
+
+    /**
+     * @param capacity Capacity of the queue
+     * @return An ArrayQueue, which is not thread-safe and never blocks
+     */
+    BenchQueue arrayQueue(int capacity);
+
+    /**
+     * @return The queues of the pipeline
+     */
+    static Queues load() {
+        try {
+            return Class.forName("BenchQueues").asSubclass(Queues.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load the pipeline queues", e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the letters of a range of UTF-8 text by halving it until the halves
+ * are no longer than the grain, so idle threads of the pool steal halves from
+ * busy ones instead of waiting for a fixed slice to finish. Halves are split
+ * before the first byte of a character near the middle, never inside one nor
+ * between an I and the mark after it (see {@link LetterCounter#isBoundary});
+ * where no character starts within three bytes of the middle, none spans it
+ * and the halves are split at the middle itself. A range too short to split
+ * outside a character is counted whole.
+ */
+public class LetterCountTask extends RecursiveTask<Long> {
+
+    public static final int DEFAULT_GRAIN = 1024 * 1024;
+
+    private static final long serialVersionUID = 1L;
+
+    private final LetterCounter counter;
+    private final ByteBuffer text;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    public LetterCountTask(LetterCounter counter, ByteBuffer text) {
+        this(counter, text, text.position(), text.limit(), DEFAULT_GRAIN);
+    }
+
+    public LetterCountTask(LetterCounter counter, ByteBuffer text, int from, int to, int grain) {
+        if (grain < 1) {
+            throw new IllegalArgumentException("The grain must be at least one byte");
+        }
+        this.counter = counter;
+        this.text = text;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    @Override
+    protected Long compute() {
+        int middle = to - from <= grain ? -1 : split();
+        if (middle < 0) {
+            return counter.count(text.slice(from, to - from));
+        }
+        LetterCountTask left = new LetterCountTask(counter, text, from, middle, grain);
+        left.fork();
+        long right = new LetterCountTask(counter, text, middle, to, grain).compute();
+        return right + left.join();
+    }
+
+    // A point strictly between from and to that is not inside a character,
+    // or -1 if there is none; a character has at most three continuation bytes
+    private int split() {
+        int middle = from + (to - from) / 2;
+        for (int i = middle; i < to && i <= middle + 3; i++) {
+            if (LetterCounter.isBoundary(text, i)) {
+                return i;
+            }
+        }
+        for (int i = middle - 1; i > from && i >= middle - 3; i--) {
+            if (LetterCounter.isBoundary(text, i)) {
+                return i;
+            }
+        }
+        // No character starts within three bytes of the middle, so none spans
+        // it unless the one at from does
+        return middle - from > 3 && isContinuation(middle) ? middle : -1;
+    }
+
+    private boolean isContinuation(int i) {
+        return (text.get(i) & 0xc0) == 0x80;
+    }
+}
@@ -0,0 +1,227 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Counts the letters of a set in text without lower-casing it first: a char
+ * counts as many letters of the set as String.toLowerCase() turns it into on
+ * its own. The count of every char is computed once, with toLowerCase()
+ * itself, into a 65536-entry table, which also turns a {@link TextHistogram}
+ * of the chars into the count of any set.
+ * <p>
+ * In Turkish and Azeri, I followed by U+0307 lowers to i alone rather than to
+ * a dotless i and a dot, so a U+0307 right after an I counts as the difference
+ * between i and I. Otherwise this is the count of the lower-cased text except
+ * where toLowerCase() looks further around a char: a final sigma, which
+ * lowers to U+03C2 rather than U+03C3; a U+0307 separated from its Turkish I
+ * by other marks; and in Lithuanian, I, J and U+012E followed by an accent
+ * above, which gain a U+0307. Those are counted char by char.
+ * <p>
+ * UTF-8 bytes are counted by one of these paths, all with the same result:
+ * <ul>
+ * <li>SCALAR decodes every character and looks it up in the char table;</li>
+ * <li>TABLE looks every byte up in a 256-entry table, and decodes only the
+ * rare characters that may lower to a letter of the set, such as U+0130;</li>
+ * <li>BITMASK tests ASCII bytes against a 128-bit mask instead;</li>
+ * <li>UNROLLED reads 8 bytes at a time as a long and, when none of them has
+ * its high bit set, which is the common case for ASCII text, adds their 8
+ * table entries in one unrolled expression without a branch. It is plain
+ * scalar code, not SIMD.</li>
+ * </ul>
+ */
+public class LetterCounter {
+
+    public enum Path {
+        SCALAR, TABLE, BITMASK, UNROLLED
+    }
+
+    public static final String OPERATING_SYSTEM_LETTERS = "operatingsym";
+
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final char DOT_ABOVE = '\u0307';
+
+    // The first UTF-8 byte of U+0300..U+033F, U+0307 among them
+    private static final int DOT_ABOVE_LEAD = 0xcc;
+
+    // A byte that starts a character which may count, which has to be decoded
+    private static final byte DECODE = -1;
+
+    private final byte[] charTable = new byte[65536];
+    private final byte[] byteTable = new byte[256];
+    private final long[] asciiMask = new long[2];
+    // The count of a U+0307 right after an I
+    private final int dotAfterI;
+    private final Path path;
+
+    public LetterCounter() {
+        this(OPERATING_SYSTEM_LETTERS, Locale.getDefault(), Path.UNROLLED);
+    }
+
+    public LetterCounter(String letters, Locale locale, Path path) {
+        this.path = path;
+        for (int c = 0; c < charTable.length; c++) {
+            if (Character.isSurrogate((char) c)) {
+                // Supplementary characters never lower to a char of the BMP
+                continue;
+            }
+            String lowered = String.valueOf((char) c).toLowerCase(locale);
+            int count = 0;
+            for (int i = 0; i < lowered.length(); i++) {
+                if (letters.indexOf(lowered.charAt(i)) >= 0) {
+                    count++;
+                }
+            }
+            charTable[c] = (byte) count;
+        }
+        String language = locale.getLanguage();
+        if (language.equals("tr") || language.equals("az")) {
+            dotAfterI = charTable['i'] - charTable['I'];
+        } else {
+            dotAfterI = charTable[DOT_ABOVE];
+        }
+        for (int b = 0; b < 0x80; b++) {
+            // An ASCII char lowers to a single char, so it counts 0 or 1
+            byteTable[b] = charTable[b];
+            asciiMask[b >>> 6] |= (long) charTable[b] << b;
+        }
+        // Two-byte characters U+0080..U+07FF, three-byte ones U+0800..U+FFFF;
+        // continuation bytes and four-byte leads stay 0
+        for (int lead = 0xc2; lead <= 0xef; lead++) {
+            int first = lead < 0xe0 ? (lead & 0x1f) << 6 : (lead & 0x0f) << 12;
+            int count = lead < 0xe0 ? 1 << 6 : 1 << 12;
+            for (int c = first; c < first + count; c++) {
+                if (charTable[c] != 0) {
+                    byteTable[lead] = DECODE;
+                    break;
+                }
+            }
+        }
+        if (dotAfterI != charTable[DOT_ABOVE]) {
+            byteTable[DOT_ABOVE_LEAD] = DECODE;
+        }
+    }
+
+    /**
+     * Whether a range of UTF-8 text may be split before the byte at i: not
+     * inside a character, nor between an I and a mark that follows it.
+     */
+    public static boolean isBoundary(ByteBuffer text, int i) {
+        int b = text.get(i) & 0xff;
+        return (b & 0xc0) != 0x80 && !(b == DOT_ABOVE_LEAD && i > 0 && text.get(i - 1) == 'I');
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long count(CharSequence text) {
+        long count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            count += c == DOT_ABOVE && i > 0 && text.charAt(i - 1) == 'I' ? dotAfterI : charTable[c];
+        }
+        return count;
+    }
+
+    // Counts the text whose chars were counted in the histogram
+    public long count(TextHistogram histogram) {
+        long[] chars = histogram.getChars();
+        long count = 0;
+        for (int c = 0; c < charTable.length; c++) {
+            count += chars[c] * charTable[c];
+        }
+        return count + histogram.getDotsAfterI() * (dotAfterI - charTable[DOT_ABOVE]);
+    }
+
+    // Counts the UTF-8 text between the position and the limit of the buffer
+    public long count(ByteBuffer text) {
+        int from = text.position();
+        int to = text.limit();
+        switch (path) {
+            case SCALAR:
+                return countScalar(text, from, to);
+            case TABLE:
+                return countTable(text, from, to);
+            case BITMASK:
+                return countBitmask(text, from, to);
+            default:
+                return countUnrolled(text, from, to);
+        }
+    }
+
+    private long countScalar(ByteBuffer text, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            int b = text.get(i) & 0xff;
+            if (b < 0x80) {
+                count += charTable[b];
+            } else if (b >= 0xc2 && b <= 0xef) {
+                count += decode(text, i, to);
+            }
+        }
+        return count;
+    }
+
+    private long countTable(ByteBuffer text, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            int entry = byteTable[text.get(i) & 0xff];
+            count += entry >= 0 ? entry : decode(text, i, text.limit());
+        }
+        return count;
+    }
+
+    private long countBitmask(ByteBuffer text, int from, int to) {
+        long count = 0;
+        for (int i = from; i < to; i++) {
+            int b = text.get(i);
+            if (b >= 0) {
+                count += (asciiMask[b >>> 6] >>> b) & 1;
+            } else if (byteTable[b & 0xff] == DECODE) {
+                count += decode(text, i, to);
+            }
+        }
+        return count;
+    }
+
+    private long countUnrolled(ByteBuffer text, int from, int to) {
+        ByteBuffer words = text.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte[] table = byteTable;
+        long count = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = words.getLong(i);
+            if ((word & HIGH_BITS) != 0) {
+                count += countTable(text, i, i + 8);
+                continue;
+            }
+            count += table[(int) word & 0x7f] + table[(int) (word >>> 8) & 0x7f]
+                    + table[(int) (word >>> 16) & 0x7f] + table[(int) (word >>> 24) & 0x7f]
+                    + table[(int) (word >>> 32) & 0x7f] + table[(int) (word >>> 40) & 0x7f]
+                    + table[(int) (word >>> 48) & 0x7f] + table[(int) (word >>> 56)];
+        }
+        return count + countTable(text, i, to);
+    }
+
+    // The count of the two- or three-byte character starting at i, or 0 if it
+    // is malformed or cut off; its continuation bytes count 0 on their own.
+    // The text starts at its position, so an I before it is not looked at
+    private int decode(ByteBuffer text, int i, int to) {
+        int lead = text.get(i) & 0xff;
+        if (lead < 0xe0) {
+            if (i + 1 >= to || (text.get(i + 1) & 0xc0) != 0x80) {
+                return 0;
+            }
+            int c = (lead & 0x1f) << 6 | text.get(i + 1) & 0x3f;
+        if (c == DOT_ABOVE && i > text.position() && text.get(i - 1) == 'I') {
+            return dotAfterI;
+        }
+        return charTable[c];
+        }
+        if (i + 2 >= to || (text.get(i + 1) & 0xc0) != 0x80 || (text.get(i + 2) & 0xc0) != 0x80) {
+            return 0;
+        }
+        return charTable[(lead & 0x0f) << 12 | (text.get(i + 1) & 0x3f) << 6 | text.get(i + 2) & 0x3f];
+    }
+}
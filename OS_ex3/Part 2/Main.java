@@ -1,74 +1,219 @@
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 
 public class Main {
 
+    // Chunks counted by the fork/join pool at once; more are only mapped once
+    // the oldest is done, which keeps the memory use constant
+    private static final int MAX_PENDING_CHUNKS = 2;
+
+    private static final int DEFAULT_TOP_WORDS = 10;
+
+    private static final String USAGE = "Usage: java Main [--histogram] [--letters=SET]... [--top=K] [--chars] [file...]\n"
+            + "  --histogram     count every char and word in one pass instead of timing the letter count\n"
+            + "  --letters=SET   also report the letters of SET found, as the letter count does (implies --histogram)\n"
+            + "  --top=K         report the K most frequent words, K at least 1 (default: " + DEFAULT_TOP_WORDS + "; implies --histogram)\n"
+            + "  --chars         report the count of every char found (implies --histogram)";
+
     public static void main(String[] args) {
 
-        List<String> lines = getLinesFromFile();
-        System.out.println("Number of lines found: " + lines.size());
+        // The options are checked before any file is looked at; only those
+        // listed in the usage switch to the histogram
+        List<String> letterSets = new ArrayList<>();
+        int top = DEFAULT_TOP_WORDS;
+        boolean printChars = false;
+        boolean histogram = false;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            if (arg.startsWith("--letters=")) {
+                letterSets.add(arg.substring("--letters=".length()));
+            } else if (arg.startsWith("--top=")) {
+                try {
+                    top = Integer.parseInt(arg.substring("--top=".length()));
+                } catch (NumberFormatException e) {
+                    top = 0;
+                }
+                if (top < 1) {
+                    System.out.println(USAGE);
+                    System.exit(1);
+                }
+            } else if (arg.equals("--chars")) {
+                printChars = true;
+            } else if (!arg.equals("--histogram")) {
+                System.out.println(USAGE);
+                System.exit(1);
+            }
+            histogram = true;
+        }
+
+        List<Path> paths = getPaths(args);
+        System.out.println("Number of bytes found: " + new MappedChunkReader(paths).totalSize());
         System.out.println("Starting to process");
 
+        if (histogram) {
+            long startTimeWithHistograms = System.currentTimeMillis();
+            workWithHistograms(paths, letterSets, top, printChars);
+            long elapsedTimeWithHistograms = (System.currentTimeMillis() - startTimeWithHistograms);
+            System.out.println("Execution time: " + elapsedTimeWithHistograms);
+            return;
+        }
+
         long startTimeWithoutThreads = System.currentTimeMillis();
-        workWithoutThreads(lines);
+        workWithoutThreads(paths);
         long elapsedTimeWithoutThreads = (System.currentTimeMillis() - startTimeWithoutThreads);
         System.out.println("Execution time: " + elapsedTimeWithoutThreads);
 
 
         long startTimeWithThreads = System.currentTimeMillis();
-        workWithThreads(lines);
+        workWithThreads(paths);
         long elapsedTimeWithThreads = (System.currentTimeMillis() - startTimeWithThreads);
         System.out.println("Execution time: " + elapsedTimeWithThreads);
 
+
+        long startTimeWithForkJoin = System.currentTimeMillis();
+        workWithForkJoin(paths);
+        long elapsedTimeWithForkJoin = (System.currentTimeMillis() - startTimeWithForkJoin);
+        System.out.println("Execution time: " + elapsedTimeWithForkJoin);
+
     }
 
-    private static void workWithThreads(List<String> lines) {
+    // Every worker takes the next chunk as soon as it is done with the last
+    // one, so they all start on the first chunks right away
+    private static void workWithThreads(List<Path> paths) {
         int x = Runtime.getRuntime().availableProcessors();
-        List<List<String>> partitions = getLinesLiseSpit(x, lines);
-        
+        List<Worker> workers = new ArrayList<>(x);
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            ExecutorService executor = Executors.newFixedThreadPool(x);
+            for (int i = 0; i < x; i++) {
+                Worker worker = new Worker(input);
+                workers.add(worker);
+                executor.submit(worker);
+            }
 
-        ExecutorService executor = Executors.newFixedThreadPool(x);
-        for (List<String> partition : partitions) {
-            executor.submit(new Worker(partition));
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        long total = 0;
+        for (Worker worker : workers) {
+            total += worker.getNumLettersFound();
         }
+        System.out.println("total number of letters found: " + total);
+    }
 
-        executor.shutdown();
-        try {
-            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
+    // One pass over the files with a histogram per worker; the histograms are
+    // merged once the workers are done and answer every question from there
+    private static void workWithHistograms(List<Path> paths, List<String> letterSets, int top,
+            boolean printChars) {
+        int x = Runtime.getRuntime().availableProcessors();
+        List<TextHistogram> histograms = new ArrayList<>(x);
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            ExecutorService executor = Executors.newFixedThreadPool(x);
+            for (int i = 0; i < x; i++) {
+                TextHistogram histogram = new TextHistogram();
+                histograms.add(histogram);
+                executor.submit(new Worker(input, histogram));
+            }
+
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
+        TextHistogram total = histograms.get(0);
+        for (int i = 1; i < histograms.size(); i++) {
+            total.merge(histograms.get(i));
+        }
+
+        long[] chars = total.getChars();
+        System.out.println("total number of letters found: " + new LetterCounter().count(total));
+        for (String letters : letterSets) {
+            LetterCounter counter = new LetterCounter(letters, Locale.getDefault(), LetterCounter.Path.TABLE);
+            System.out.println("letters of \"" + letters + "\" found: " + counter.count(total));
+        }
+        if (printChars) {
+            System.out.println("chars found:");
+            for (int c = 0; c < chars.length; c++) {
+                if (chars[c] != 0) {
+                    String shown = Character.isISOControl(c) || Character.isSurrogate((char) c) ? ""
+                            : " " + (char) c;
+                    System.out.println(String.format("  U+%04X%s %d", c, shown, chars[c]));
+                }
+            }
+        }
+        WordCounts words = total.getWords();
+        System.out.println("distinct words found: " + words.size() + ", most frequent:");
+        for (WordCounts.Entry entry : words.top(top)) {
+            System.out.println("  " + entry.getCount() + " " + entry.getWord());
+        }
     }
 
-    private static void workWithoutThreads(List<String> lines) {
-        Worker worker = new Worker(lines);
-        worker.run();
+    private static void workWithForkJoin(List<Path> paths) {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        LetterCounter counter = new LetterCounter();
+        Deque<ForkJoinTask<Long>> pending = new ArrayDeque<>();
+        long total = 0;
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            ByteBuffer chunk;
+            while ((chunk = input.next()) != null) {
+                pending.add(pool.submit(new LetterCountTask(counter, chunk)));
+                if (pending.size() > MAX_PENDING_CHUNKS) {
+                    total += pending.remove().join();
+                }
+            }
+            while (!pending.isEmpty()) {
+                total += pending.remove().join();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("total number of letters found: " + total);
     }
 
-    private static List<String> getLinesFromFile() {
-        try {
-            return Files.readAllLines(Paths.get("C:\\Temp\\Shakespeare.txt"));
+    private static void workWithoutThreads(List<Path> paths) {
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            Worker worker = new Worker(input);
+            worker.run();
         } catch (IOException e) {
             e.printStackTrace();
-            return Collections.emptyList();
         }
     }
 
-    private static List<List<String>> getLinesLiseSpit(int x, List<String> lines){
-        List<List<String>> partitions = new ArrayList<>(x);
-        int partitionSize = lines.size() / x;
-        for (int i = 0; i < x; i++) {
-            int startIndex = i * partitionSize;
-            int endIndex = (i == x - 1) ? lines.size() : (i + 1) * partitionSize;
-            partitions.add(lines.subList(startIndex, endIndex));
+    private static List<Path> getPaths(String[] args) {
+        List<Path> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                paths.add(Paths.get(arg));
+            }
+        }
+        if (paths.isEmpty()) {
+            paths.add(Paths.get("C:\\Temp\\Shakespeare.txt"));
         }
-        return partitions;
+        return paths;
     }
 }
@@ -0,0 +1,105 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out the contents of one or more files as memory-mapped chunks of about
+ * chunkSize bytes. A chunk ends after the last newline it contains, or, for a
+ * line longer than a chunk, before the last UTF-8 character that may not fit,
+ * so no character, nor an I and the mark after it, is ever split between two
+ * chunks. Only the chunks being
+ * counted are mapped, whatever the size of the files.
+ * <p>
+ * A mapping is only released once its buffer is garbage collected, so the
+ * number of mappings alive can reach the number of chunks read since the last
+ * collection; chunks are at least {@link #MIN_CHUNK_SIZE} bytes so that this
+ * stays far below the limit of mappings per process.
+ */
+public class MappedChunkReader implements Closeable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    public static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+    private final List<Path> paths;
+    private final int chunkSize;
+    private int nextPath;
+    private FileChannel channel;
+    private long position;
+    private long size;
+
+    public MappedChunkReader(List<Path> paths) {
+        this(paths, DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedChunkReader(List<Path> paths, int chunkSize) {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("A chunk must be at least " + MIN_CHUNK_SIZE + " bytes");
+        }
+        this.paths = new ArrayList<>(paths);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the next chunk, or null once every file was read. Safe to call
+     * from several workers at once.
+     */
+    public synchronized ByteBuffer next() throws IOException {
+        while (channel == null || position == size) {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (nextPath == paths.size()) {
+                return null;
+            }
+            channel = FileChannel.open(paths.get(nextPath++), StandardOpenOption.READ);
+            position = 0;
+            size = channel.size();
+        }
+        int length = (int) Math.min(chunkSize, size - position);
+        ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        if (position + length < size) {
+            length = boundary(chunk, length);
+        }
+        position += length;
+        return chunk.slice(0, length);
+    }
+
+    public long totalSize() {
+        long total = 0;
+        for (Path path : paths) {
+            total += path.toFile().length();
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        nextPath = paths.size();
+    }
+
+    private static int boundary(ByteBuffer chunk, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (chunk.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        // No newline: cut before the lead byte of the last character, and
+        // before an I that it follows
+        int i = length - 1;
+        while (i > 0 && !LetterCounter.isBoundary(chunk, i)) {
+            i--;
+        }
+        return i > 0 ? i : length;
+    }
+}
@@ -0,0 +1,120 @@
+import java.nio.ByteBuffer;
+
+/**
+ * The counts of every char and of every word in UTF-8 text, kept by one
+ * thread and merged with those of the other threads at the end. The chars are
+ * those of the decoded text, before any lower-casing, so one pass answers the
+ * letter counts of any set through {@link LetterCounter#count(TextHistogram)},
+ * along with the number of U+0307 right after an I, which lower-case
+ * together in Turkish and Azeri. A word
+ * is a run of letters and digits, lower-cased char by char; a word longer than
+ * MAX_WORD_LENGTH chars is counted by its beginning. Malformed bytes are
+ * skipped and end a word.
+ */
+public class TextHistogram {
+
+    public static final int MAX_WORD_LENGTH = 256;
+
+    private static final char[] LOWER = new char[65536];
+    private static final boolean[] WORD_CHAR = new boolean[65536];
+
+    static {
+        for (int c = 0; c < LOWER.length; c++) {
+            LOWER[c] = Character.toLowerCase((char) c);
+            WORD_CHAR[c] = Character.isLetterOrDigit((char) c);
+        }
+    }
+
+    private final long[] chars = new long[65536];
+    private final WordCounts words = new WordCounts();
+    private final char[] word = new char[MAX_WORD_LENGTH];
+    private int wordLength;
+    private char previous;
+    private long dotsAfterI;
+    private long bytes;
+
+    // Adds the text between the position and the limit of the buffer
+    public void add(ByteBuffer text) {
+        int to = text.limit();
+        int i = text.position();
+        bytes += to - i;
+        previous = 0;
+        while (i < to) {
+            int b = text.get(i) & 0xff;
+            if (b < 0x80) {
+                add((char) b);
+                i++;
+                continue;
+            }
+            int length = b >= 0xf8 ? 0 : b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : b >= 0xc2 ? 2 : 0;
+            int codePoint = length == 4 ? b & 0x07 : length == 3 ? b & 0x0f : b & 0x1f;
+            for (int j = 1; j < length; j++) {
+                int next = i + j < to ? text.get(i + j) : 0;
+                if ((next & 0xc0) != 0x80) {
+                    length = 0;
+                    break;
+                }
+                codePoint = codePoint << 6 | next & 0x3f;
+            }
+            if (length == 0) {
+                endWord();
+                previous = 0;
+                i++;
+            } else {
+                if (length == 4) {
+                    add(Character.highSurrogate(codePoint));
+                    add(Character.lowSurrogate(codePoint));
+                } else {
+                    add((char) codePoint);
+                }
+                i += length;
+            }
+        }
+        endWord();
+    }
+
+    public void merge(TextHistogram other) {
+        for (int c = 0; c < chars.length; c++) {
+            chars[c] += other.chars[c];
+        }
+        words.merge(other.words);
+        dotsAfterI += other.dotsAfterI;
+        bytes += other.bytes;
+    }
+
+    public long[] getChars() {
+        return chars;
+    }
+
+    public WordCounts getWords() {
+        return words;
+    }
+
+    public long getDotsAfterI() {
+        return dotsAfterI;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    private void add(char c) {
+        chars[c]++;
+        if (c == '\u0307' && previous == 'I') {
+            dotsAfterI++;
+        }
+        previous = c;
+        if (!WORD_CHAR[c]) {
+            endWord();
+        } else if (wordLength < word.length) {
+            word[wordLength++] = LOWER[c];
+        }
+    }
+
+    private void endWord() {
+        if (wordLength > 0) {
+            words.add(word, wordLength);
+            wordLength = 0;
+        }
+    }
+}
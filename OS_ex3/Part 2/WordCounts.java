@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts of words, in an open-addressing hash table of primitive arrays: the
+ * chars of all the words are kept one after the other in a single arena, and
+ * a slot only holds where its word starts, its length, its hash and its count.
+ * Adding a word that is already counted allocates nothing.
+ */
+public class WordCounts {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    private char[] arena = new char[INITIAL_CAPACITY * 8];
+    private int arenaSize;
+    private int size;
+
+    public static class Entry {
+        private final String word;
+        private final long count;
+
+        Entry(String word, long count) {
+            this.word = word;
+            this.count = count;
+        }
+
+        public String getWord() {
+            return word;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public void add(char[] word, int length) {
+        add(word, 0, length, hash(word, 0, length), 1);
+    }
+
+    public void merge(WordCounts other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.arena, other.starts[slot], other.lengths[slot], other.hashes[slot], other.counts[slot]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The k most frequent words, most frequent first; ties go to the word
+    // that sorts first
+    public List<Entry> top(int k) {
+        int[] heap = new int[Math.min(k, size)];
+        int n = 0;
+        for (int slot = 0; slot < counts.length && heap.length > 0; slot++) {
+            if (counts[slot] == 0) {
+                continue;
+            }
+            if (n < heap.length) {
+                heap[n] = slot;
+                siftUp(heap, n++);
+            } else if (isBefore(slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, n);
+            }
+        }
+        // The root is the last of the top words, so the heap empties backwards
+        Entry[] top = new Entry[n];
+        while (n > 0) {
+            int slot = heap[0];
+            top[--n] = new Entry(new String(arena, starts[slot], lengths[slot]), counts[slot]);
+            heap[0] = heap[n];
+            siftDown(heap, n);
+        }
+        List<Entry> entries = new ArrayList<>(top.length);
+        for (Entry entry : top) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private void add(char[] word, int start, int length, int hash, long count) {
+        int mask = counts.length - 1;
+        int slot = hash & mask;
+        while (counts[slot] != 0) {
+            if (hashes[slot] == hash && lengths[slot] == length && equals(starts[slot], word, start, length)) {
+                counts[slot] += count;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (arenaSize + length > arena.length) {
+            char[] grown = new char[Math.max(arena.length * 2, arenaSize + length)];
+            System.arraycopy(arena, 0, grown, 0, arenaSize);
+            arena = grown;
+        }
+        System.arraycopy(word, start, arena, arenaSize, length);
+        starts[slot] = arenaSize;
+        lengths[slot] = length;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        arenaSize += length;
+        if (++size * 2 > counts.length) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        int[] oldStarts = starts;
+        int[] oldLengths = lengths;
+        int[] oldHashes = hashes;
+        long[] oldCounts = counts;
+        int capacity = oldCounts.length * 2;
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        for (int old = 0; old < oldCounts.length; old++) {
+            if (oldCounts[old] == 0) {
+                continue;
+            }
+            int slot = oldHashes[old] & (capacity - 1);
+            while (counts[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            starts[slot] = oldStarts[old];
+            lengths[slot] = oldLengths[old];
+            hashes[slot] = oldHashes[old];
+            counts[slot] = oldCounts[old];
+        }
+    }
+
+    private boolean equals(int arenaStart, char[] word, int start, int length) {
+        for (int i = 0; i < length; i++) {
+            if (arena[arenaStart + i] != word[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] word, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + word[i];
+        }
+        // Spread the high bits, which the mask would drop
+        return hash ^ (hash >>> 16);
+    }
+
+    // Whether slot a ranks before slot b among the most frequent words
+    private boolean isBefore(int a, int b) {
+        if (counts[a] != counts[b]) {
+            return counts[a] > counts[b];
+        }
+        int length = Math.min(lengths[a], lengths[b]);
+        for (int i = 0; i < length; i++) {
+            char ca = arena[starts[a] + i];
+            char cb = arena[starts[b] + i];
+            if (ca != cb) {
+                return ca < cb;
+            }
+        }
+        return lengths[a] < lengths[b];
+    }
+
+    // A min-heap of the top words: the root ranks after all the others
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isBefore(heap[parent], heap[i])) {
+                break;
+            }
+            swap(heap, parent, i);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int n) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && isBefore(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!isBefore(heap[i], heap[child])) {
+                break;
+            }
+            swap(heap, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+}
@@ -1,33 +1,53 @@
-import java.util.List;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class Worker implements Runnable {
-    private final List<String> lines;
+    private static final LetterCounter COUNTER = new LetterCounter();
 
-    public Worker(List<String> lines) {
-        this.lines = lines;
+    private final MappedChunkReader input;
+    private final TextHistogram histogram;
+    private long numLettersFound;
+
+    // Counts the chunks it takes from the reader, as long as there are any
+    public Worker(MappedChunkReader input) {
+        this(input, null);
     }
 
-    public void run() {
-        int numLettersFound = 0;
-        for (String lines : lines) {
-            numLettersFound += getNumLettersFound(lines);
+    // Adds the chunks it takes from the reader to the histogram, which belongs
+    // to this worker, and counts the letters from the histogram at the end
+    public Worker(MappedChunkReader input, TextHistogram histogram) {
+        this.input = input;
+        this.histogram = histogram;
+    }
 
+    public void run() {
+        long numLettersFound = 0;
+        try {
+            ByteBuffer chunk;
+            while ((chunk = input.next()) != null) {
+                if (histogram == null) {
+                    numLettersFound += getNumLettersFound(chunk);
+                } else {
+                    histogram.add(chunk);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (histogram != null) {
+            numLettersFound = COUNTER.count(histogram);
         }
+        this.numLettersFound = numLettersFound;
         System.out.println("number of letters found: " + numLettersFound);
     }
 
-    private int getNumLettersFound(String string) {
-        int numLettersFound = 0;
-        String lowerCasedLine = string.toLowerCase();
-        for (int i = 0; i < lowerCasedLine.length(); i++) {
-            char c = lowerCasedLine.charAt(i);
-            if (c == 'o' || c == 'p' || c == 'e' || c == 'r' || c == 'a' ||
-                    c == 't' || c == 'i' || c == 'n' || c == 'g'
-                    || c == 's' || c == 'y' || c == 'm') {
-                numLettersFound += 1;
-
-            }
-        }
+    public long getNumLettersFound() {
         return numLettersFound;
     }
+
+    // The letters of "operating system" in the chunk once lower-cased, counted
+    // without lower-casing it
+    private long getNumLettersFound(ByteBuffer chunk) {
+        return COUNTER.count(chunk);
+    }
 }
@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+import bench.CountModes;
+
+/**
+ * The counting modes for the benchmarks of package bench, which cannot name
+ * the classes they use; see {@link CountModes}.
+ */
+public class BenchCountModes implements CountModes {
+
+    @Override
+    public long sequential(List<Path> paths) throws IOException {
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            Worker worker = new Worker(input);
+            worker.run();
+            return worker.getNumLettersFound();
+        }
+    }
+
+    @Override
+    public long fixedPool(List<Path> paths, ExecutorService executor, int threads)
+            throws IOException, InterruptedException, ExecutionException {
+        List<Worker> workers = new ArrayList<>(threads);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            for (int i = 0; i < threads; i++) {
+                Worker worker = new Worker(input);
+                workers.add(worker);
+                futures.add(executor.submit(worker));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        long total = 0;
+        for (Worker worker : workers) {
+            total += worker.getNumLettersFound();
+        }
+        return total;
+    }
+
+    // As Main does it, with its two pending chunks
+    @Override
+    public long forkJoin(List<Path> paths, ForkJoinPool pool) throws IOException {
+        LetterCounter counter = new LetterCounter();
+        Deque<ForkJoinTask<Long>> pending = new ArrayDeque<>();
+        long total = 0;
+        try (MappedChunkReader input = new MappedChunkReader(paths)) {
+            ByteBuffer chunk;
+            while ((chunk = input.next()) != null) {
+                pending.add(pool.submit(new LetterCountTask(counter, chunk)));
+                if (pending.size() > 2) {
+                    total += pending.remove().join();
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            total += pending.remove().join();
+        }
+        return total;
+    }
+
+    // The stream runs in the given pool, so it uses as many threads as asked
+    // rather than those of the common pool
+    @Override
+    public long parallelStream(List<Path> paths, ForkJoinPool pool)
+            throws IOException, InterruptedException, ExecutionException {
+        LetterCounter counter = new LetterCounter();
+        List<ByteBuffer> chunks = new ArrayList<>();
+        try (MappedChunkReader input = new MappedChunkReader(paths, LetterCountTask.DEFAULT_GRAIN)) {
+            ByteBuffer chunk;
+            while ((chunk = input.next()) != null) {
+                chunks.add(chunk);
+            }
+        }
+        return pool.submit(() -> chunks.parallelStream().mapToLong(counter::count).sum()).get();
+    }
+}
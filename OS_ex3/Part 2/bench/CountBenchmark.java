@@ -0,0 +1,223 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the {@link CountModes}: counting letters with a Worker
+ * run sequentially, by a fixed thread pool of workers sharing a
+ * MappedChunkReader, by a ForkJoin pool of LetterCountTasks and by a parallel
+ * stream over 1 MB chunks, over generated corpora of 1 MB, 100 MB and 1 GB and, for the
+ * parallel modes, several thread counts.
+ * <p>
+ * Next to the runs per second, the megabytes counter gives the throughput in
+ * MB/s, and the GC profiler the allocation rate. The corpora are generated
+ * once into java.io.tmpdir/count-bench and reused by later runs. Every run
+ * has to find the same number of letters as the first sequential one.
+ * <p>
+ * Usage: <code>java -cp bench/target/benchmarks.jar bench.CountBenchmark [JMH options]</code>,
+ * which adds the GC profiler, e.g. <code>-p sizeMb=1,100 -p threads=1,4</code>
+ * for a subset; see bench/pom.xml
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CountBenchmark {
+
+    private static final int MB = 1024 * 1024;
+
+    private static final String[] WORDS = { "the", "of", "and", "to", "a", "in", "is", "system", "operating",
+            "process", "thread", "memory", "kernel", "scheduler", "file", "page", "lock", "queue", "signal",
+            "interrupt", "Operating", "SYSTEM", "na\u00efve", "syst\u00e8me", "stra\u00dfe",
+            "\u0130stanbul", "\u03a9mega", "\u64cd\u4f5c\u7cfb\u7edf", "proce\u00df", "\u00c9COLE" };
+
+    /**
+     * The corpus counted, and the number of letters in it.
+     */
+    @State(Scope.Benchmark)
+    public static class Corpus {
+
+        @Param({ "1", "100", "1024" })
+        public int sizeMb;
+
+        private CountModes modes;
+        private List<Path> paths;
+        private long letters;
+        private PrintStream out;
+
+        @Setup(Level.Trial)
+        public void generate() throws IOException {
+            modes = CountModes.load();
+            paths = List.of(corpus(sizeMb));
+            // The workers print their counts, which would only time the console
+            out = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            letters = modes.sequential(paths);
+        }
+
+        @TearDown(Level.Trial)
+        public void restoreOut() {
+            System.setOut(out);
+        }
+
+        long check(long count) {
+            if (count != letters) {
+                throw new IllegalStateException("Found " + count + " letters instead of " + letters);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The threads of the parallel modes, created before the measured runs.
+     */
+    @State(Scope.Benchmark)
+    public static class Pools {
+
+        @Param({ "1", "2", "4", "8" })
+        public int threads;
+
+        private ExecutorService executor;
+        private ForkJoinPool forkJoinPool;
+
+        @Setup(Level.Trial)
+        public void start() {
+            executor = Executors.newFixedThreadPool(threads);
+            forkJoinPool = new ForkJoinPool(threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            executor.shutdown();
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * The megabytes counted in an iteration, which JMH reports per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Benchmark
+    public long sequential(Corpus corpus, Throughput throughput) throws IOException {
+        throughput.megabytes += corpus.sizeMb;
+        return corpus.check(corpus.modes.sequential(corpus.paths));
+    }
+
+    @Benchmark
+    public long fixedPool(Corpus corpus, Pools pools, Throughput throughput)
+            throws IOException, InterruptedException, ExecutionException {
+        throughput.megabytes += corpus.sizeMb;
+        return corpus.check(corpus.modes.fixedPool(corpus.paths, pools.executor, pools.threads));
+    }
+
+    @Benchmark
+    public long forkJoin(Corpus corpus, Pools pools, Throughput throughput) throws IOException {
+        throughput.megabytes += corpus.sizeMb;
+        return corpus.check(corpus.modes.forkJoin(corpus.paths, pools.forkJoinPool));
+    }
+
+    @Benchmark
+    public long parallelStream(Corpus corpus, Pools pools, Throughput throughput)
+            throws IOException, InterruptedException, ExecutionException {
+        throughput.megabytes += corpus.sizeMb;
+        return corpus.check(corpus.modes.parallelStream(corpus.paths, pools.forkJoinPool));
+    }
+
+    // Lines of words drawn with a skew towards the first ones, with a few
+    // non-ASCII ones; deterministic, so every run counts the same text
+    private static Path corpus(int sizeMb) throws IOException {
+        Path directory = Paths.get(System.getProperty("java.io.tmpdir"), "count-bench");
+        Path file = directory.resolve("corpus-" + sizeMb + "MB.txt");
+        if (Files.isRegularFile(file) && Files.size(file) == (long) sizeMb * MB) {
+            return file;
+        }
+        Files.createDirectories(directory);
+        byte[][] words = new byte[WORDS.length][];
+        for (int i = 0; i < WORDS.length; i++) {
+            words[i] = WORDS[i].getBytes(StandardCharsets.UTF_8);
+        }
+        Random random = new Random(sizeMb);
+        byte[] block = new byte[MB];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int b = 0; b < sizeMb; b++) {
+                int length = 0;
+                int wordsOnLine = 0;
+                while (true) {
+                    double r = random.nextDouble();
+                    byte[] word = words[(int) (words.length * r * r)];
+                    // Room for the word, its separator and the newline ending the block
+                    if (length + word.length + 2 > block.length) {
+                        break;
+                    }
+                    System.arraycopy(word, 0, block, length, word.length);
+                    length += word.length;
+                    block[length++] = (byte) (++wordsOnLine % 12 == 0 ? '\n' : ' ');
+                }
+                while (length < block.length) {
+                    block[length++] = '\n';
+                }
+                out.write(block);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Runs the benchmarks with the GC profiler, which reports the allocation
+     * rate of every mode.
+     *
+     * @param args JMH command line options
+     * @throws RunnerException            If a benchmark fails
+     * @throws CommandLineOptionException If the options are invalid
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+                .include(CountBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,43 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The counting modes of Main, each returning the number of letters in the
+ * files. JMH needs the benchmarks in a named package, which cannot refer to
+ * the classes of the default package, so this is implemented by
+ * BenchCountModes, a default package class of this module, and loaded by name.
+ */
+public interface CountModes {
+
+    /** One Worker on the calling thread. */
+    long sequential(List<Path> paths) throws IOException;
+
+    /** As many Workers as threads, sharing one MappedChunkReader. */
+    long fixedPool(List<Path> paths, ExecutorService executor, int threads)
+            throws IOException, InterruptedException, ExecutionException;
+
+    /** A LetterCountTask per chunk, at most Main.MAX_PENDING_CHUNKS waiting. */
+    long forkJoin(List<Path> paths, ForkJoinPool pool) throws IOException;
+
+    /** A parallel stream over chunks of LetterCountTask.DEFAULT_GRAIN, run in the pool. */
+    long parallelStream(List<Path> paths, ForkJoinPool pool)
+            throws IOException, InterruptedException, ExecutionException;
+
+    /**
+     * @return The counting modes
+     */
+    static CountModes load() {
+        try {
+            return Class.forName("BenchCountModes").asSubclass(CountModes.class).getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load the counting modes", e);
+        }
+    }
+}